@@ -0,0 +1,145 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.benchmark.ConfigFileGenerator;
+import org.kin.framework.hotswap.jclass.ClassHotswap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大数据表随机查找延迟, {@link ColumnTable}对比{@code HashMap<Integer, Row>}
+ * <p>
+ * 两者的堆占用(full gc后的堆使用量差值)以及解析耗时在setup时输出, 不计入benchmark结果
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class ColumnTableBenchmark {
+    /** 随机查找的key数量, 2的n次方 */
+    private static final int LOOKUP_KEY_COUNT = 1 << 16;
+    private static final int PRICE_COLUMN = 1;
+    private static final int EXP_COLUMN = 2;
+
+    @Param({"1000000", "10000000"})
+    private int rowCount;
+
+    private Path dir;
+    private Path file;
+    private ColumnTableFileReloadable reloadable;
+    private ColumnTable table;
+    private Map<Integer, Row> boxedMap;
+    private int[] lookupKeys;
+    private int cursor;
+
+    @Setup
+    public void setup() throws IOException {
+        Files.createDirectories(Paths.get(ClassHotswap.CLASSPATH));
+        dir = Files.createTempDirectory("columnTableBenchmark");
+        file = ConfigFileGenerator.generateTable(dir.resolve("item.csv"), rowCount);
+
+        long baseline = usedHeapAfterGc();
+        long startTime = System.currentTimeMillis();
+        reloadable = new ColumnTableFileReloadable(file.toString(), ',', true, 0,
+                ColumnType.INT, ColumnType.INT, ColumnType.LONG, ColumnType.DOUBLE, ColumnType.STRING);
+        reloadable.load();
+        table = reloadable.get();
+        long tableCost = System.currentTimeMillis() - startTime;
+        long tableHeap = usedHeapAfterGc() - baseline;
+
+        baseline = usedHeapAfterGc();
+        startTime = System.currentTimeMillis();
+        boxedMap = loadBoxedMap(file);
+        long boxedCost = System.currentTimeMillis() - startTime;
+        long boxedHeap = usedHeapAfterGc() - baseline;
+        System.out.printf("%n%d rows, ColumnTable heap %d MB, parse %d ms; HashMap<Integer, Row> heap %d MB, parse %d ms%n",
+                rowCount, tableHeap >> 20, tableCost, boxedHeap >> 20, boxedCost);
+
+        Random random = new Random(0);
+        lookupKeys = new int[LOOKUP_KEY_COUNT];
+        for (int i = 0; i < lookupKeys.length; i++) {
+            lookupKeys[i] = random.nextInt(rowCount);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileMonitor.instance().unmonitor(reloadable);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long columnTable() {
+        int key = lookupKeys[cursor++ & (LOOKUP_KEY_COUNT - 1)];
+        ColumnTable table = this.table;
+        int row = table.row(key);
+        return table.getInt(row, PRICE_COLUMN) + table.getLong(row, EXP_COLUMN);
+    }
+
+    @Benchmark
+    public long boxedMap() {
+        int key = lookupKeys[cursor++ & (LOOKUP_KEY_COUNT - 1)];
+        Row row = boxedMap.get(key);
+        return row.price + row.exp;
+    }
+
+    /**
+     * 逐行split解析, 即改造前的常见实现
+     */
+    private static Map<Integer, Row> loadBoxedMap(Path file) throws IOException {
+        Map<Integer, Row> map = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            //表头
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                Row row = new Row(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                        Double.parseDouble(fields[3]), fields[4]);
+                map.put(row.id, row);
+            }
+        }
+        return map;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoryMXBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private static final class Row {
+        private final int id;
+        private final int price;
+        private final long exp;
+        private final double rate;
+        private final String name;
+
+        Row(int id, int price, long exp, double rate, String name) {
+            this.id = id;
+            this.price = price;
+            this.exp = exp;
+            this.rate = rate;
+            this.name = name;
+        }
+    }
+}
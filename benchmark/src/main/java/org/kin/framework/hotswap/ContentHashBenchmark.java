@@ -0,0 +1,60 @@
+package org.kin.framework.hotswap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * class文件以及配置文件内容hash开销, md5为旧版本{@code ClassFileInfo}的实现, 作为对比基准
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentHashBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    private int size;
+
+    private byte[] bytes;
+    private ByteBuffer directBuffer;
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        directBuffer = ByteBuffer.allocateDirect(size);
+        directBuffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    public byte[] md5() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("MD5").digest(bytes);
+    }
+
+    @Benchmark
+    public long crc32() {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+        return crc32.getValue();
+    }
+
+    @Benchmark
+    public long xxHash64() {
+        return XxHash64.hash(bytes);
+    }
+
+    @Benchmark
+    public long xxHash64Direct() {
+        return XxHash64.hash(directBuffer);
+    }
+}
@@ -0,0 +1,98 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.jclass.ClassHotswap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 文件变化检测以及分发开销
+ * <p>
+ * pollingScan: 定时扫描模式下, 单次扫描所有监听目录并对比快照的开销
+ * registryMatch: 文件变化事件分发时, 根据目录以及文件名查找{@link AbstractFileReloadable}的开销
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileChangeDetectorBenchmark {
+    @Param({"100", "10000"})
+    private int fileCount;
+
+    private Path dir;
+    private Path dummyDir;
+    private Path dummy;
+    private Path changedFile;
+    private PollingFileChangeDetector detector;
+    private FileWatchRegistry registry;
+    private AbstractFileReloadable reloadable;
+    private String lastFileName;
+    private long modifyTime;
+
+    @Setup
+    public void setup() throws IOException {
+        Files.createDirectories(Paths.get(ClassHotswap.CLASSPATH));
+        dir = FileWatchRegistry.normalize(Files.createTempDirectory("fileChangeDetectorBenchmark"));
+        for (int i = 0; i < fileCount; i++) {
+            Files.createFile(dir.resolve("config" + i + ".properties"));
+        }
+        changedFile = dir.resolve("config0.properties");
+        lastFileName = "config" + (fileCount - 1) + ".properties";
+        modifyTime = Files.getLastModifiedTime(changedFile).toMillis();
+
+        //仅用于注册, 放在另外的目录, 以免benchmark修改文件时触发FileMonitor
+        dummyDir = Files.createTempDirectory("fileChangeDetectorBenchmarkDummy");
+        dummy = Files.createFile(dummyDir.resolve("dummy"));
+        reloadable = new AbstractFileReloadable(dummy.toString()) {
+            @Override
+            protected void reload(InputStream is) {
+                //do nothing
+            }
+        };
+
+        //不启动轮询线程, 直接调用scanAll
+        detector = new PollingFileChangeDetector(TimeUnit.DAYS.toMillis(1));
+        registry = new FileWatchRegistry(detector);
+        for (int i = 0; i < fileCount; i++) {
+            registry.register(dir.resolve("config" + i + ".properties"), reloadable);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileMonitor.instance().unmonitor(reloadable);
+        detector.close();
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(dir);
+        Files.deleteIfExists(dummy);
+        Files.deleteIfExists(dummyDir);
+    }
+
+    @Benchmark
+    public List<FileChangeDetector.FileChange> pollingScan() throws IOException {
+        //每次修改一个文件, 保证扫描结果非空
+        modifyTime += 1000;
+        Files.setLastModifiedTime(changedFile, FileTime.fromMillis(modifyTime));
+        return detector.scanAll();
+    }
+
+    @Benchmark
+    public List<AbstractFileReloadable> registryMatch() {
+        return registry.match(dir, lastFileName);
+    }
+}
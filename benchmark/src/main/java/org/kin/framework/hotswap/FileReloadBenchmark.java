@@ -0,0 +1,102 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.benchmark.ConfigFileGenerator;
+import org.kin.framework.hotswap.jclass.ClassHotswap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同{@link FileReadMode}下, 单个配置文件热加载开销, 解析仅逐字节累加, 各模式解析开销一致
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileReloadBenchmark {
+    @Param({"1KB", "1MB", "64MB", "500MB"})
+    private String size;
+    @Param({"STREAM", "MAPPED", "DIRECT"})
+    private FileReadMode mode;
+
+    private Path dir;
+    private Path file;
+    private ChecksumReloadable reloadable;
+
+    @Setup
+    public void setup() throws IOException {
+        Files.createDirectories(Paths.get(ClassHotswap.CLASSPATH));
+        dir = Files.createTempDirectory("fileReloadBenchmark");
+        file = ConfigFileGenerator.generate(dir.resolve("config.properties"), ConfigFileGenerator.parseSize(size));
+        reloadable = new ChecksumReloadable(file, mode);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileMonitor.instance().unmonitor(reloadable);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long reload() throws IOException {
+        reloadable.reloadFile(file);
+        return reloadable.checksum;
+    }
+
+    /**
+     * 累加所有字节, 模拟解析
+     */
+    private static final class ChecksumReloadable extends AbstractFileReloadable {
+        private final FileReadMode mode;
+        private long checksum;
+
+        ChecksumReloadable(Path file, FileReadMode mode) {
+            super(file.toString());
+            this.mode = mode;
+        }
+
+        @Override
+        protected FileReadMode readMode() {
+            return mode;
+        }
+
+        @Override
+        protected void reload(Path path, ByteBuffer buffer) {
+            long checksum = 0;
+            while (buffer.hasRemaining()) {
+                checksum += buffer.get();
+            }
+            this.checksum = checksum;
+        }
+
+        @Override
+        protected void reload(InputStream is) {
+            try {
+                long checksum = 0;
+                byte[] bytes = new byte[8192];
+                int len;
+                while ((len = is.read(bytes)) > 0) {
+                    for (int i = 0; i < len; i++) {
+                        checksum += bytes[i];
+                    }
+                }
+                this.checksum = checksum;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
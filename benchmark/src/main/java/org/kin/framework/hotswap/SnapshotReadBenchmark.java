@@ -0,0 +1,126 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.benchmark.ConfigFileGenerator;
+import org.kin.framework.hotswap.jclass.ClassHotswap;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 持续热加载期间读线程吞吐量, {@link AbstractSnapshotFileReloadable}对比基于读写锁的实现
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SnapshotReadBenchmark {
+    private static final String KEY = "key1";
+
+    private Path dir;
+    private Path file;
+    private PropertiesSnapshotReloadable snapshotReloadable;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Properties lockedProperties;
+
+    @Setup
+    public void setup() throws IOException {
+        Files.createDirectories(Paths.get(ClassHotswap.CLASSPATH));
+        dir = Files.createTempDirectory("snapshotReadBenchmark");
+        file = ConfigFileGenerator.generate(dir.resolve("config.properties"), 4096);
+        snapshotReloadable = new PropertiesSnapshotReloadable(file);
+        snapshotReloadable.load();
+        lockedProperties = loadProperties(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileMonitor.instance().unmonitor(snapshotReloadable);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(3)
+    public String snapshotRead() {
+        return snapshotReloadable.get().getProperty(KEY);
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public long snapshotReload() throws IOException {
+        snapshotReloadable.reloadFile(file);
+        return snapshotReloadable.getVersion();
+    }
+
+    @Benchmark
+    @Group("rwLock")
+    @GroupThreads(3)
+    public String rwLockRead() {
+        lock.readLock().lock();
+        try {
+            return lockedProperties.getProperty(KEY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("rwLock")
+    @GroupThreads(1)
+    public Properties rwLockReload() {
+        //与snapshot一致, 在锁外解析, 锁内替换
+        Properties properties = loadProperties(file);
+        lock.writeLock().lock();
+        try {
+            lockedProperties = properties;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return properties;
+    }
+
+    private static Properties loadProperties(Path file) {
+        try (InputStream is = Files.newInputStream(file)) {
+            return loadProperties(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Properties loadProperties(InputStream is) {
+        Properties properties = new Properties();
+        try {
+            properties.load(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+
+    private static final class PropertiesSnapshotReloadable extends AbstractSnapshotFileReloadable<Properties> {
+        PropertiesSnapshotReloadable(Path file) {
+            super(file.toString());
+        }
+
+        @Override
+        protected Properties parse(Path path, InputStream is) {
+            return loadProperties(is);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.kin.framework.hotswap.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 生成合成class文件以及class文件zip包, 用于benchmark
+ * <p>
+ * 生成的类仅包含无参构造方法以及{@code public int value()}方法, 返回构造时指定的常量
+ * 修改常量即可生成可redefine的新版本, 不依赖字节码框架
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+public final class ClassBundleGenerator {
+    /** class文件magic */
+    private static final int MAGIC = 0xCAFEBABE;
+    /** java8 class文件版本 */
+    private static final int MAJOR_VERSION = 52;
+    /** ACC_PUBLIC | ACC_SUPER */
+    private static final int CLASS_ACCESS_FLAGS = 0x0021;
+    /** ACC_PUBLIC */
+    private static final int METHOD_ACCESS_FLAGS = 0x0001;
+
+    private ClassBundleGenerator() {
+    }
+
+    /**
+     * @param prefix 类名前缀, 比如org.kin.bench.Generated
+     * @param count  类数量
+     * @return 类名列表
+     */
+    public static List<String> classNames(String prefix, int count) {
+        List<String> classNames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            classNames.add(prefix + i);
+        }
+        return classNames;
+    }
+
+    /**
+     * 生成class文件内容
+     *
+     * @param className 类名
+     * @param value     {@code value()}方法返回值
+     * @param padding   额外填充的常量池字节数, 用于模拟大类
+     */
+    public static byte[] generate(String className, int value, int padding) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(256 + padding);
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+
+            //常量池, 填充常量每个最多65535字节
+            int paddingCount = (padding + 65534) / 65535;
+            out.writeShort(13 + paddingCount);
+            //#1
+            writeUtf8(out, className.replace('.', '/'));
+            //#2
+            out.writeByte(7);
+            out.writeShort(1);
+            //#3
+            writeUtf8(out, "java/lang/Object");
+            //#4
+            out.writeByte(7);
+            out.writeShort(3);
+            //#5
+            writeUtf8(out, "<init>");
+            //#6
+            writeUtf8(out, "()V");
+            //#7 NameAndType
+            out.writeByte(12);
+            out.writeShort(5);
+            out.writeShort(6);
+            //#8 Methodref java/lang/Object.<init>
+            out.writeByte(10);
+            out.writeShort(4);
+            out.writeShort(7);
+            //#9
+            writeUtf8(out, "Code");
+            //#10
+            writeUtf8(out, "value");
+            //#11
+            writeUtf8(out, "()I");
+            //#12 Integer
+            out.writeByte(3);
+            out.writeInt(value);
+            //填充
+            int remain = padding;
+            for (int i = 0; i < paddingCount; i++) {
+                int len = Math.min(remain, 65535);
+                out.writeByte(1);
+                out.writeShort(len);
+                for (int j = 0; j < len; j++) {
+                    out.writeByte('a' + j % 26);
+                }
+                remain -= len;
+            }
+
+            out.writeShort(CLASS_ACCESS_FLAGS);
+            //this class
+            out.writeShort(2);
+            //super class
+            out.writeShort(4);
+            //interfaces
+            out.writeShort(0);
+            //fields
+            out.writeShort(0);
+
+            //methods
+            out.writeShort(2);
+            //public <init>() {super();}, aload_0, invokespecial #8, return
+            writeMethod(out, 5, 6, new byte[]{0x2A, (byte) 0xB7, 0x00, 0x08, (byte) 0xB1});
+            //public int value() {return value;}, ldc #12, ireturn
+            writeMethod(out, 10, 11, new byte[]{0x12, 0x0C, (byte) 0xAC});
+
+            //attributes
+            out.writeShort(0);
+            out.flush();
+            return baos.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 生成包含{@code count}个类的zip包
+     *
+     * @param file    zip包路径
+     * @param prefix  类名前缀
+     * @param count   类数量
+     * @param value   {@code value()}方法返回值
+     * @param padding 每个class文件额外填充的字节数
+     * @return zip包路径
+     */
+    public static Path zip(Path file, String prefix, int count, int value, int padding) throws IOException {
+        try (OutputStream os = Files.newOutputStream(file);
+             ZipOutputStream zos = new ZipOutputStream(os)) {
+            for (String className : classNames(prefix, count)) {
+                zos.putNextEntry(new ZipEntry(className.replace('.', '/') + ".class"));
+                zos.write(generate(className, value, padding));
+                zos.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static void writeUtf8(DataOutputStream out, String s) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(s);
+    }
+
+    /**
+     * max_stack=1, max_locals=1
+     */
+    private static void writeMethod(DataOutputStream out, int nameIndex, int descriptorIndex, byte[] code) throws IOException {
+        out.writeShort(METHOD_ACCESS_FLAGS);
+        out.writeShort(nameIndex);
+        out.writeShort(descriptorIndex);
+        out.writeShort(1);
+        //Code attribute
+        out.writeShort(9);
+        out.writeInt(12 + code.length);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(code.length);
+        out.write(code);
+        //exception table
+        out.writeShort(0);
+        //attributes
+        out.writeShort(0);
+    }
+}
@@ -0,0 +1,81 @@
+package org.kin.framework.hotswap.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 生成指定大小的properties格式配置文件以及CSV数据表, 用于benchmark
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+public final class ConfigFileGenerator {
+    private ConfigFileGenerator() {
+    }
+
+    /**
+     * 解析大小, 比如1KB, 64MB, 500MB, 1GB, 纯数字则是字节数
+     */
+    public static long parseSize(String size) {
+        String upper = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1024L;
+        } else if (upper.endsWith("MB")) {
+            unit = 1024L * 1024;
+        } else if (upper.endsWith("GB")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            upper = upper.substring(0, upper.length() - 2);
+        }
+        return Long.parseLong(upper.trim()) * unit;
+    }
+
+    /**
+     * 生成大小刚好为{@code size}的配置文件, 每行格式为key{n}=value{n}
+     *
+     * @param file 配置文件路径
+     * @param size 文件大小
+     * @return 配置文件路径
+     */
+    public static Path generate(Path file, long size) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            long written = 0;
+            for (long i = 0; written < size; i++) {
+                String line = "key" + i + "=value" + i + "\n";
+                if (written + line.length() > size) {
+                    //最后一行截断, 保证文件大小准确
+                    line = line.substring(0, (int) (size - written));
+                }
+                writer.write(line);
+                written += line.length();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 生成CSV数据表, 表头为id,price,exp,rate,name, id从0开始连续递增, 其余列为随机值
+     *
+     * @param file     数据文件路径
+     * @param rowCount 行数
+     * @return 数据文件路径
+     */
+    public static Path generateTable(Path file, int rowCount) throws IOException {
+        Random random = new Random(rowCount);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write("id,price,exp,rate,name\n");
+            for (int i = 0; i < rowCount; i++) {
+                writer.write(i + "," + random.nextInt(100000) + "," + random.nextLong() + ","
+                        + random.nextInt(10000) / 100.0 + ",item" + i + "\n");
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,70 @@
+package org.kin.framework.hotswap.jclass;
+
+import com.sun.tools.classfile.ClassFile;
+import com.sun.tools.classfile.ConstantPoolException;
+import org.kin.framework.hotswap.benchmark.ClassBundleGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从class文件中解析class name的开销, {@link ClassFileParser} vs 旧版本使用的{@link ClassFile#read(InputStream)} + {@link String#replaceAll(String, String)}
+ * <p>
+ * jdk8下{@link ClassFile}位于tools.jar, 需保证classpath包含tools.jar;
+ * jdk9+位于jdk.jdeps模块且未导出, 已在fork jvm参数加上--add-exports, jdk8会忽略该参数
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+IgnoreUnrecognizedVMOptions", "--add-exports=jdk.jdeps/com.sun.tools.classfile=ALL-UNNAMED"})
+@State(Scope.Benchmark)
+public class ClassFileParseBenchmark {
+    /**
+     * small, 生成的小类
+     * large, 生成的常量池填充64KB的大类
+     * real, 真实的类, 即{@link ClassHotswap}
+     */
+    @Param({"small", "large", "real"})
+    private String source;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (source) {
+            case "small":
+                bytes = ClassBundleGenerator.generate("org.kin.framework.hotswap.benchmark.Generated", 1, 0);
+                break;
+            case "large":
+                bytes = ClassBundleGenerator.generate("org.kin.framework.hotswap.benchmark.Generated", 1, 65536);
+                break;
+            case "real":
+                try (InputStream is = ClassHotswap.class.getResourceAsStream(ClassHotswap.class.getSimpleName() + ".class")) {
+                    bytes = ClassFileEntry.readAll(is);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown source " + source);
+        }
+    }
+
+    @Benchmark
+    public String classFileParser() {
+        return ClassFileParser.parse(bytes).getClassName();
+    }
+
+    @Benchmark
+    public String classFileRead() throws IOException, ConstantPoolException {
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return ClassFile.read(dis).getName().replaceAll("/", "\\.");
+        }
+    }
+}
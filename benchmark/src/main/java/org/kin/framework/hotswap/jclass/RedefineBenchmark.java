@@ -0,0 +1,68 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.kin.framework.hotswap.benchmark.ClassBundleGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Instrumentation#redefineClasses(ClassDefinition...)}开销, 即热更新期间业务线程可能被暂停的时长
+ * 每次交替redefine两个版本的class文件, 以保证内容确实变化
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.attach.allowAttachSelf=true")
+@State(Scope.Benchmark)
+public class RedefineBenchmark {
+    @Param({"1", "100", "1000"})
+    private int classCount;
+
+    private Instrumentation instrumentation;
+    private ClassDefinition[] v1;
+    private ClassDefinition[] v2;
+    private boolean flip;
+
+    @Setup
+    public void setup() throws Exception {
+        instrumentation = InstrumentationProvider.get();
+
+        GeneratedClassLoader classLoader = new GeneratedClassLoader();
+        List<String> classNames = ClassBundleGenerator.classNames("org.kin.framework.hotswap.benchmark.Redefine", classCount);
+        v1 = new ClassDefinition[classCount];
+        v2 = new ClassDefinition[classCount];
+        for (int i = 0; i < classCount; i++) {
+            String className = classNames.get(i);
+            byte[] bytes1 = ClassBundleGenerator.generate(className, 1, 0);
+            Class<?> c = classLoader.define(className, bytes1);
+            v1[i] = new ClassDefinition(c, bytes1);
+            v2[i] = new ClassDefinition(c, ClassBundleGenerator.generate(className, 2, 0));
+        }
+    }
+
+    @Benchmark
+    public void redefine() throws Exception {
+        instrumentation.redefineClasses(flip ? v1 : v2);
+        flip = !flip;
+    }
+
+    /**
+     * 加载生成的类
+     */
+    static final class GeneratedClassLoader extends ClassLoader {
+        GeneratedClassLoader() {
+            super(GeneratedClassLoader.class.getClassLoader());
+        }
+
+        Class<?> define(String className, byte[] bytes) {
+            return defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+}
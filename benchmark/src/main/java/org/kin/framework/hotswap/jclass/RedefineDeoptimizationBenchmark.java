@@ -0,0 +1,82 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redefine后, 已JIT编译的代码会被逆优化, 需重新预热
+ * 每轮measurement开始前redefine热点类, 对比不redefine时各轮的吞吐量, 即可看出redefine后吞吐量下降幅度以及恢复速度
+ * 建议加上-jvmArgsAppend -XX:+PrintCompilation观察逆优化
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.attach.allowAttachSelf=true")
+@State(Scope.Benchmark)
+public class RedefineDeoptimizationBenchmark {
+    @Param({"false", "true"})
+    private boolean redefine;
+
+    private Instrumentation instrumentation;
+    private ClassDefinition definition;
+    private long seed = 17;
+
+    @Setup
+    public void setup() throws Exception {
+        instrumentation = InstrumentationProvider.get();
+        definition = new ClassDefinition(HotTarget.class, readClassFile(HotTarget.class));
+    }
+
+    @Setup(Level.Iteration)
+    public void redefine() throws Exception {
+        if (redefine) {
+            instrumentation.redefineClasses(definition);
+        }
+    }
+
+    @Benchmark
+    public long call() {
+        seed = HotTarget.compute(seed);
+        return seed;
+    }
+
+    private static byte[] readClassFile(Class<?> c) throws IOException {
+        try (InputStream is = c.getResourceAsStream(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class")) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = is.read(buffer)) > 0) {
+                baos.write(buffer, 0, len);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * 被redefine的热点类
+     */
+    public static final class HotTarget {
+        private HotTarget() {
+        }
+
+        public static long compute(long x) {
+            long h = x;
+            for (int i = 0; i < 16; i++) {
+                h ^= h << 13;
+                h ^= h >>> 7;
+                h ^= h << 17;
+            }
+            return h;
+        }
+    }
+}
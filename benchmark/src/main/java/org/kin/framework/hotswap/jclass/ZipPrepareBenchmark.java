@@ -0,0 +1,88 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.kin.framework.hotswap.XxHash64;
+import org.kin.framework.hotswap.benchmark.ClassBundleGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 类热更新准备阶段开销, 即读取zip包内class文件, 计算hash以及解析class文件头, 对比串行与并行
+ * 不包括{@link Class#forName(String)}, 因为生成的类均未加载
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ZipPrepareBenchmark {
+    @Param({"1", "100", "1000", "10000"})
+    private int classCount;
+    /** 每个class文件额外填充的字节数 */
+    @Param({"0", "8192"})
+    private int padding;
+
+    private Path zip;
+
+    @Setup
+    public void setup() throws IOException {
+        zip = ClassBundleGenerator.zip(Files.createTempFile("zipPrepareBenchmark", ".zip"),
+                "org.kin.framework.hotswap.benchmark.Generated", classCount, 1, padding);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(zip);
+    }
+
+    @Benchmark
+    public long sequential() throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            long checksum = 0;
+            for (ClassFileEntry entry : entries(zipFile)) {
+                checksum += prepare(entry);
+            }
+            return checksum;
+        }
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            return entries(zipFile).parallelStream().mapToLong(ZipPrepareBenchmark::prepare).sum();
+        }
+    }
+
+    private List<ClassFileEntry> entries(ZipFile zipFile) {
+        String zipFilePath = zip + "!/";
+        List<ClassFileEntry> entries = new ArrayList<>(classCount);
+        Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements()) {
+            entries.add(ClassFileEntry.zipEntry(zipFilePath, zipFile, zipEntries.nextElement(), null));
+        }
+        return entries;
+    }
+
+    private static long prepare(ClassFileEntry entry) {
+        try {
+            byte[] bytes = entry.read();
+            long hash = XxHash64.hash(bytes);
+            return hash + ClassFileParser.parse(bytes).getClassName().length();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,30 +1,466 @@
 package org.kin.framework.hotswap;
 
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 文件热更新父类
+ * <p>
+ * 默认以{@link FileReadMode#STREAM}方式读取文件, 大文件可以重写{@link #readMode()}和{@link #reload(Path, ByteBuffer)},
+ * 直接解析{@link java.nio.MappedByteBuffer}或者池化的direct {@link ByteBuffer}, 以减少内存复制
+ * <p>
+ * 文件变化触发的热加载, 默认会跳过内容没有变化的文件, 比如touch或者重复写入相同内容, 详见{@link #reloadFile(Path, boolean)}
+ * 以{@link FileReadMode#STREAM}方式读取超过{@code kin.hotswap.reload.stream.prereadMaxBytes}的大文件时, 仅能根据大小以及修改时间跳过
+ * <p>
+ * 可通过{@link #dependsOn(AbstractFileReloadable...)}声明依赖, 存在依赖关系的reloadable按依赖图批量热加载, 详见{@link FileReloadGraph}
  *
  * @author huangjianqin
  * @date 2018/2/1
  */
 public abstract class AbstractFileReloadable implements Reloadable {
-    /** 文件路径 */
+    private static final Logger log = LoggerFactory.getLogger(AbstractFileReloadable.class);
+    /** 文件内容没有变化时, 是否跳过热加载 */
+    private static final boolean SKIP_UNCHANGED = Boolean.parseBoolean(SysUtils.getSysProperty("kin.hotswap.reload.skipUnchanged", "true"));
+    /** 文件修改时间距离读取时间不足该值(ms)时, 不能仅根据大小以及修改时间判断内容没有变化, 覆盖常见文件系统的修改时间精度 */
+    private static final long RACY_MS = 2000;
+    /** 内容没有变化而跳过的热加载次数 */
+    static final LongAdder SKIPPED_COUNT = new LongAdder();
+    /**
+     * {@link FileReadMode#STREAM}方式读取时, 不超过该大小(bytes)的文件先整体读入堆内存计算hash, 内容没有变化则跳过解析
+     * 超过该大小的文件只能在解析的同时计算hash, 默认8MB
+     */
+    private static final int STREAM_PREREAD_MAX_BYTES = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.reload.stream.prereadMaxBytes", String.valueOf(8 * 1024 * 1024)));
+    /** 修改依赖图的锁, 保证环检测与修改的原子性 */
+    private static final Object GRAPH_LOCK = new Object();
+
+    /** 文件路径, 监听目录时则是目录路径 */
     private final String filePath;
+    /** 是否监听目录 */
+    private final boolean directory;
+    /** 依赖的reloadable, 同一批次变化时, 先于本reloadable热加载 */
+    private final Set<AbstractFileReloadable> dependencies = new CopyOnWriteArraySet<>();
+    /** 依赖本reloadable的reloadable, 本reloadable热加载后, 也需要重新热加载 */
+    private final Set<AbstractFileReloadable> dependents = new CopyOnWriteArraySet<>();
+    /** key -> 文件路径, value -> 上次热加载时的文件指纹 */
+    private final Map<Path, Fingerprint> fingerprints = new ConcurrentHashMap<>();
 
     public AbstractFileReloadable(String filePath) {
         this.filePath = filePath;
+        this.directory = false;
         FileMonitor.instance().monitorFile(filePath, this);
     }
 
+    /**
+     * 监听目录下匹配glob的文件, 需重写{@link #reload(Path, InputStream)}以区分具体变化的文件
+     *
+     * @param dirPath   目录路径
+     * @param glob      glob, 匹配相对于{@code dirPath}的路径
+     * @param recursive 是否监听整个目录树
+     */
+    public AbstractFileReloadable(String dirPath, String glob, boolean recursive) {
+        this.filePath = dirPath;
+        this.directory = true;
+        FileMonitor.instance().monitorDirectory(Paths.get(dirPath), glob, recursive, this);
+    }
+
     public String getFilePath() {
         return filePath;
     }
 
+    /**
+     * 声明依赖, 比如掉落表引用了道具表, 则掉落表依赖道具表
+     * <p>
+     * 依赖的文件变化后, 本reloadable也会重新热加载, 且总是在依赖热加载完成后才热加载
+     * 如果本reloadable是监听目录的, 仅由依赖触发时, 没有具体变化的文件, 则不会重新热加载
+     *
+     * @param inputs 依赖的reloadable
+     * @throws IllegalArgumentException 依赖形成环
+     */
+    public final void dependsOn(AbstractFileReloadable... inputs) {
+        synchronized (GRAPH_LOCK) {
+            for (AbstractFileReloadable input : inputs) {
+                Objects.requireNonNull(input);
+                if (input.dependsOnTransitively(this)) {
+                    throw new IllegalArgumentException(String.format("%s depends on %s form a cycle",
+                            getClass().getName(), input.getClass().getName()));
+                }
+                dependencies.add(input);
+                input.dependents.add(this);
+            }
+        }
+    }
+
+    /**
+     * @return 是否直接或间接依赖{@code target}, 包括自身
+     */
+    private boolean dependsOnTransitively(AbstractFileReloadable target) {
+        Set<AbstractFileReloadable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<AbstractFileReloadable> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            AbstractFileReloadable reloadable = stack.pop();
+            if (reloadable == target) {
+                return true;
+            }
+            if (visited.add(reloadable)) {
+                reloadable.dependencies.forEach(stack::push);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从依赖图中移除
+     */
+    final void detach() {
+        synchronized (GRAPH_LOCK) {
+            for (AbstractFileReloadable input : dependencies) {
+                input.dependents.remove(this);
+            }
+            for (AbstractFileReloadable dependent : dependents) {
+                dependent.dependencies.remove(this);
+            }
+            dependencies.clear();
+            dependents.clear();
+        }
+    }
+
+    /**
+     * @return 是否在依赖图中, 即存在依赖或者被依赖
+     */
+    final boolean isInGraph() {
+        return !dependencies.isEmpty() || !dependents.isEmpty();
+    }
+
+    final Set<AbstractFileReloadable> getDependencies() {
+        return dependencies;
+    }
+
+    final Set<AbstractFileReloadable> getDependents() {
+        return dependents;
+    }
+
+    final boolean isDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return 文件内容读取方式, 默认{@link FileReadMode#STREAM}
+     */
+    protected FileReadMode readMode() {
+        return FileReadMode.STREAM;
+    }
+
+    /**
+     * 文件变化, 默认立即读取并重载文件, 内容没有变化则跳过
+     */
+    void onFileChanged(Path path) throws IOException {
+        reloadFile(path, true);
+    }
+
+    /**
+     * 读取并重载文件, 不论内容是否变化
+     */
+    final void reloadFile(Path path) throws IOException {
+        reloadFile(path, false);
+    }
+
+    /**
+     * 读取并重载文件, 分别统计文件大小, 读取耗时以及解析耗时
+     * <p>
+     * 开启{@link #skipUnchanged()}时, 记录每个文件的大小, 修改时间以及内容hash
+     * 大小以及修改时间与上次一致则不读取直接跳过, 否则:
+     * 1. {@link FileReadMode#MAPPED}和{@link FileReadMode#DIRECT}读取后基于读取的buffer计算hash, hash一致则跳过解析
+     * 2. {@link FileReadMode#STREAM}且文件不超过{@link #STREAM_PREREAD_MAX_BYTES}时, 先整体读入堆内存计算hash, hash一致则跳过解析,
+     * 否则基于内存中的内容解析, 文件仍只读取一次
+     * 3. {@link FileReadMode#STREAM}且文件超过{@link #STREAM_PREREAD_MAX_BYTES}时, 在解析的同时流式计算hash, 不额外占用内存,
+     * 因此无法跳过解析, 仅{@link AbstractSnapshotFileReloadable}会在hash一致时丢弃解析结果, 不发布新快照
+     *
+     * @param path          文件路径
+     * @param skipUnchanged 内容与上次热加载一致时, 是否跳过
+     * @return 是否执行了重载
+     */
+    final boolean reloadFile(Path path, boolean skipUnchanged) throws IOException {
+        boolean fingerprintEnabled = skipUnchanged();
+        skipUnchanged &= fingerprintEnabled;
+        FileReadMode readMode = readMode();
+        long startTime = System.currentTimeMillis();
+        long lastModified = 0;
+        long fileSize = 0;
+        if (fingerprintEnabled) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            lastModified = attributes.lastModifiedTime().toMillis();
+            fileSize = attributes.size();
+            if (skipUnchanged && isUnchanged(path, fileSize, lastModified)) {
+                SKIPPED_COUNT.increment();
+                log.info("file reload '{}' skipped, size and last modified are unchanged", path);
+                return false;
+            }
+        }
+
+        long size;
+        long readEndTime;
+        long hash = 0;
+        if (readMode == FileReadMode.STREAM && fingerprintEnabled && fileSize <= STREAM_PREREAD_MAX_BYTES) {
+            //小文件先整体读入堆内存计算hash, 内容没有变化则不解析
+            byte[] bytes;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                bytes = readFully(channel, (int) Math.min(channel.size(), STREAM_PREREAD_MAX_BYTES));
+            }
+            size = bytes.length;
+            readEndTime = System.currentTimeMillis();
+            hash = XxHash64.hash(bytes);
+            if (skipUnchanged && isSameContent(path, size, lastModified, hash, startTime)) {
+                return false;
+            }
+            reload(path, new ByteArrayInputStream(bytes));
+        } else if (readMode == FileReadMode.STREAM) {
+            try (InputStream is = new FileInputStream(path.toFile())) {
+                readEndTime = startTime;
+                if (!fingerprintEnabled) {
+                    size = is.available();
+                    reload(path, is);
+                } else {
+                    //大文件则解析的同时计算hash, 解析完成后再读取剩余内容, 以得到完整内容的hash
+                    FingerprintInputStream fis = new FingerprintInputStream(is, path, skipUnchanged, lastModified, startTime);
+                    reload(path, fis);
+                    fis.drain();
+                    size = fis.getCount();
+                    hash = fis.getHash();
+                    if (fis.unchanged) {
+                        return false;
+                    }
+                }
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalStateException(String.format("file '%s' is too large to read into ByteBuffer, size %d", path, size));
+                }
+
+                if (readMode == FileReadMode.MAPPED) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    //预先加载到物理内存, 以便区分读取耗时以及解析耗时
+                    buffer.load();
+                    readEndTime = System.currentTimeMillis();
+                    if (fingerprintEnabled) {
+                        hash = XxHash64.hash(buffer);
+                        if (skipUnchanged && isSameContent(path, size, lastModified, hash, startTime)) {
+                            return false;
+                        }
+                    }
+                    reload(path, buffer);
+                } else {
+                    ByteBuffer buffer = DirectBufferPool.INSTANCE.acquire((int) size);
+                    try {
+                        while (buffer.hasRemaining()) {
+                            if (channel.read(buffer) < 0) {
+                                break;
+                            }
+                        }
+                        buffer.flip();
+                        readEndTime = System.currentTimeMillis();
+                        if (fingerprintEnabled) {
+                            hash = XxHash64.hash(buffer);
+                            if (skipUnchanged && isSameContent(path, size, lastModified, hash, startTime)) {
+                                return false;
+                            }
+                        }
+                        reload(path, buffer.asReadOnlyBuffer());
+                    } finally {
+                        DirectBufferPool.INSTANCE.release(buffer);
+                    }
+                }
+            }
+        }
+        if (fingerprintEnabled) {
+            fingerprints.put(path, new Fingerprint(size, lastModified, hash, startTime));
+        }
+        long endTime = System.currentTimeMillis();
+        HotswapStatistics.instance().record(HotswapPhase.FILE_RELOAD, path.toString(), TimeUnit.MILLISECONDS.toNanos(endTime - startTime));
+        log.info("file reload '{}' finished, mode {}, size {} bytes, read cost {} ms, parse cost {} ms",
+                path, readMode, size, readEndTime - startTime, endTime - readEndTime);
+        return true;
+    }
+
+    /**
+     * 从{@code channel}读取至多{@code maxBytes}字节, 读取期间文件被截断则只返回实际读到的内容
+     */
+    private static byte[] readFully(FileChannel channel, int maxBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(maxBytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position() == maxBytes ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * 文件大小以及修改时间与上次热加载时一致, 则认为内容没有变化
+     * 上次热加载时, 修改时间距离读取时间不足{@link #RACY_MS}, 则不可信, 因为同一修改时间精度内可能再次写入
+     *
+     * @return 是否可以不读取文件, 直接认为内容没有变化
+     */
+    final boolean isUnchanged(Path path, long size, long lastModified) {
+        if (!skipUnchanged()) {
+            return false;
+        }
+        Fingerprint fingerprint = fingerprints.get(path);
+        return Objects.nonNull(fingerprint) && fingerprint.size == size && fingerprint.lastModified == lastModified
+                && fingerprint.lastModified + RACY_MS < fingerprint.recordTime;
+    }
+
+    /**
+     * 内容hash与上次热加载时一致, 则更新修改时间, 并跳过解析
+     *
+     * @return 内容是否没有变化
+     */
+    private boolean isSameContent(Path path, long size, long lastModified, long hash, long startTime) {
+        Fingerprint fingerprint = fingerprints.get(path);
+        if (Objects.isNull(fingerprint) || fingerprint.size != size || fingerprint.hash != hash) {
+            return false;
+        }
+        fingerprints.put(path, new Fingerprint(size, lastModified, hash, startTime));
+        SKIPPED_COUNT.increment();
+        log.info("file reload '{}' skipped, content hash is unchanged", path);
+        return true;
+    }
+
+    /**
+     * 清除所有文件指纹, 下次文件变化时必定重新热加载
+     * 依赖图批量热加载失败时调用, 因为成功解析的新数据也没有发布
+     */
+    final void clearFingerprints() {
+        fingerprints.clear();
+    }
+
+    /**
+     * {@link FileReadMode#STREAM}方式读取时, 解析完成后判断内容是否与上次热加载一致, 一致则无需发布解析结果
+     *
+     * @param is {@link #reload(Path, InputStream)}传入的文件流
+     * @return 内容是否没有变化
+     */
+    final boolean isStreamContentUnchanged(InputStream is) {
+        if (!(is instanceof FingerprintInputStream)) {
+            return false;
+        }
+        FingerprintInputStream fis = (FingerprintInputStream) is;
+        if (!fis.skipUnchanged) {
+            return false;
+        }
+        try {
+            fis.drain();
+        } catch (IOException e) {
+            //读取失败, 则当作内容变化, 由调用方继续读取时抛出异常
+            return false;
+        }
+        fis.unchanged = isSameContent(fis.path, fis.getCount(), fis.lastModified, fis.getHash(), fis.startTime);
+        return fis.unchanged;
+    }
+
+    /**
+     * @return 文件内容没有变化时, 是否跳过热加载, 默认{@code kin.hotswap.reload.skipUnchanged}, 即true
+     * 同步加载等主动调用的热加载不受影响
+     */
+    protected boolean skipUnchanged() {
+        return SKIP_UNCHANGED;
+    }
+
+    /**
+     * 文件重载, 仅当{@link #readMode()}为{@link FileReadMode#MAPPED}或者{@link FileReadMode#DIRECT}时调用
+     * {@code buffer}是只读的, {@link FileReadMode#DIRECT}时, 方法返回后{@code buffer}会被回收复用, 不能在方法外持有
+     * 默认包装成{@link InputStream}并调用{@link #reload(Path, InputStream)}, 重写以直接解析{@code buffer}, 避免内存复制
+     *
+     * @param path   变化的文件路径
+     * @param buffer 文件内容
+     */
+    protected void reload(Path path, ByteBuffer buffer) {
+        reload(path, new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * 文件重载
+     * 默认调用{@link #reload(InputStream)}
+     *
+     * @param path 变化的文件路径
+     * @param is   文件流
+     */
+    protected void reload(Path path, InputStream is) {
+        reload(is);
+    }
+
     /**
      * 文件重载
      *
      * @param is 文件流
      */
     protected abstract void reload(InputStream is);
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * {@link FileReadMode#STREAM}方式读取时, 传给{@link #reload(Path, InputStream)}的文件流, 记录计算文件指纹所需的信息
+     */
+    private static final class FingerprintInputStream extends HashingInputStream {
+        /** 文件路径 */
+        private final Path path;
+        /** 内容与上次热加载一致时, 是否跳过 */
+        private final boolean skipUnchanged;
+        /** 文件修改时间 */
+        private final long lastModified;
+        /** 开始读取时间 */
+        private final long startTime;
+        /** 内容是否与上次热加载一致 */
+        private boolean unchanged;
+
+        FingerprintInputStream(InputStream in, Path path, boolean skipUnchanged, long lastModified, long startTime) {
+            super(in);
+            this.path = path;
+            this.skipUnchanged = skipUnchanged;
+            this.lastModified = lastModified;
+            this.startTime = startTime;
+        }
+    }
+
+    /**
+     * 文件指纹
+     */
+    private static final class Fingerprint {
+        /** 文件大小 */
+        private final long size;
+        /** 文件修改时间 */
+        private final long lastModified;
+        /** 内容hash, 基于{@link XxHash64} */
+        private final long hash;
+        /** 读取时间 */
+        private final long recordTime;
+
+        Fingerprint(long size, long lastModified, long hash, long recordTime) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.recordTime = recordTime;
+        }
+    }
 }
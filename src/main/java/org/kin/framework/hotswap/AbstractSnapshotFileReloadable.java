@@ -0,0 +1,432 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 基于不可变快照的文件热更新父类
+ * <p>
+ * 在文件热加载线程解析出新的数据, 然后通过一次原子引用替换发布新的{@link Snapshot}, 每次发布版本号+1
+ * 读线程通过{@link #get()}读取数据, 仅一次volatile读, 无锁, 无等待, 无内存分配(懒加载且快照stale时除外)
+ * 旧快照被替换后由GC回收, 读线程持有多久都不受影响
+ * 数据持有需主动释放的资源时, 可重写{@link #retire(Object)}, 旧快照被替换后延迟{@link #RETIRE_DELAY_MS}调用
+ * <p>
+ * 解析出来的数据应该是不可变的, 否则读线程仍可能读到部分修改的数据
+ * <p>
+ * 在依赖图中时, 按依赖图批量热加载, 解析出来的数据先暂存, 整批成功才一起发布, 并生成新的{@link ReloadGeneration}
+ * 解析时通过{@link #input(AbstractSnapshotFileReloadable)}读取依赖同一批次解析出来的新数据
+ * <p>
+ * 重写{@link #lazy()}开启懒加载, 适用于很少访问的文件, 文件变化时仅将当前快照标记为stale, 不解析
+ * 首次通过{@link #get()}或者{@link #snapshot()}访问时才同步加载, 并发访问的线程等待同一次加载完成
+ * 还可以重写{@link #prefetchDelayMs()}, 文件变化后一段时间内没有再次变化且没有被访问, 则在文件热加载线程预加载
+ * 依赖图批量热加载时总是立即解析, 不受懒加载影响
+ *
+ * @param <T> 数据类型
+ * @author huangjianqin
+ * @date 2022/3/11
+ */
+public abstract class AbstractSnapshotFileReloadable<T> extends AbstractFileReloadable {
+    private static final Logger log = LoggerFactory.getLogger(AbstractSnapshotFileReloadable.class);
+    /** 旧快照被替换后, 延迟多久(ms)回收 */
+    private static final long RETIRE_DELAY_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.snapshot.retireDelay", "5000"));
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<AbstractSnapshotFileReloadable, Snapshot> SNAPSHOT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractSnapshotFileReloadable.class, Snapshot.class, "snapshot");
+    /** 初始快照, 未加载过数据 */
+    private static final Snapshot<?> EMPTY = new Snapshot<>(null, 0, 0, null);
+
+    /** 当前快照 */
+    @SuppressWarnings("unchecked")
+    private volatile Snapshot<T> snapshot = (Snapshot<T>) EMPTY;
+    /** 懒加载锁, 保证同时只有一个线程加载 */
+    private final Object lazyLock = new Object();
+    /** 正在懒加载的stale快照, 用于识别加载期间文件是否再次变化 */
+    private volatile Snapshot<T> loading;
+
+    public AbstractSnapshotFileReloadable(String filePath) {
+        super(filePath);
+    }
+
+    public AbstractSnapshotFileReloadable(String dirPath, String glob, boolean recursive) {
+        super(dirPath, glob, recursive);
+    }
+
+    /**
+     * 同步加载文件并发布快照, 一般用于初始化
+     * 仅适用于监听单个文件的场景
+     */
+    public final void load() throws IOException {
+        reloadFile(Paths.get(getFilePath()));
+    }
+
+    /**
+     * 重写{@link #retire(Object)}释放资源时, 返回的数据在被替换后{@link #RETIRE_DELAY_MS}内有效, 读线程不能持有更久
+     *
+     * @return 当前数据, 未加载过则返回null
+     */
+    public final T get() {
+        return snapshot().value;
+    }
+
+    /**
+     * @return 当前快照, 数据与版本号一致
+     */
+    public final Snapshot<T> snapshot() {
+        Snapshot<T> snapshot = this.snapshot;
+        if (Objects.nonNull(snapshot.stale)) {
+            snapshot = loadStale();
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return 文件是否已变化但还没加载, 不会触发懒加载
+     */
+    public final boolean isStale() {
+        return snapshot.isStale();
+    }
+
+    /**
+     * @return 当前快照版本号, 未加载过则为0
+     */
+    public final long getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * @return 是否懒加载, 默认false, 即文件变化后立即解析
+     */
+    protected boolean lazy() {
+        return false;
+    }
+
+    /**
+     * @return 懒加载时, 文件变化后多久(ms)没有再次变化且没有被访问, 则预加载, 小于等于0则不预加载, 默认0
+     */
+    protected long prefetchDelayMs() {
+        return 0;
+    }
+
+    @Override
+    final void onFileChanged(Path path) throws IOException {
+        if (lazy()) {
+            markStale(path);
+        } else {
+            super.onFileChanged(path);
+        }
+    }
+
+    /**
+     * 将当前快照标记为stale, 并记录文件大小以及修改时间
+     */
+    private void markStale(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (Objects.isNull(snapshot.stale) && isUnchanged(path, size, lastModified)) {
+            //与当前数据对应的文件一致
+            return;
+        }
+        Stale stale = new Stale(path, size, lastModified);
+        Snapshot<T> old;
+        Snapshot<T> marker;
+        do {
+            old = snapshot;
+            if (stale.equals(old.stale)) {
+                //同一次修改的重复事件
+                return;
+            }
+            marker = new Snapshot<>(old.value, old.version, old.publishTime, stale);
+        } while (!SNAPSHOT_UPDATER.compareAndSet(this, old, marker));
+        log.info("{} mark snapshot stale, version {}, file '{}' size {}, last modified {}",
+                getClass().getName(), marker.version, path, stale.size, stale.lastModified);
+
+        long prefetchDelayMs = prefetchDelayMs();
+        if (prefetchDelayMs > 0) {
+            Snapshot<T> finalMarker = marker;
+            SnapshotScheduler.SCHEDULER.schedule(() -> prefetch(finalMarker), prefetchDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 预加载, 期间文件再次变化或者已被访问加载, 则不需要预加载
+     */
+    private void prefetch(Snapshot<T> marker) {
+        if (snapshot != marker) {
+            return;
+        }
+        try {
+            FileMonitor.instance().getFileReloadExecutor().execute(() -> {
+                if (snapshot == marker) {
+                    loadStale();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //首次访问时再加载
+            log.warn("{} prefetch is rejected", getClass().getName());
+        }
+    }
+
+    /**
+     * 加载stale快照对应的文件, 同时只有一个线程加载, 其余线程等待加载完成
+     * 加载失败则保留旧数据并清除stale标识, 以免每次访问都重新解析, 文件再次变化时才会重新加载
+     *
+     * @return 加载后的快照
+     */
+    private Snapshot<T> loadStale() {
+        synchronized (lazyLock) {
+            Snapshot<T> current = snapshot;
+            if (Objects.isNull(current.stale)) {
+                //其他线程已加载
+                return current;
+            }
+
+            Path path = current.stale.path;
+            loading = current;
+            try {
+                if (!reloadFile(path, true)) {
+                    //内容没有变化
+                    clearStale(current);
+                }
+            } catch (Exception e) {
+                log.error(String.format("%s lazy load '%s' encounter error", getClass().getName(), path), e);
+                HotswapStatistics.instance().recordFailure(HotswapPhase.FILE_RELOAD, path.toString(), e);
+                clearStale(current);
+            } finally {
+                loading = null;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 清除stale标识, 期间文件再次变化则不清除
+     */
+    private void clearStale(Snapshot<T> stale) {
+        SNAPSHOT_UPDATER.compareAndSet(this, stale, new Snapshot<>(stale.value, stale.version, stale.publishTime, null));
+    }
+
+    @Override
+    protected final void reload(Path path, ByteBuffer buffer) {
+        publish(parse(path, buffer));
+    }
+
+    @Override
+    protected final void reload(Path path, InputStream is) {
+        T value = parse(path, is);
+        if (isStreamContentUnchanged(is)) {
+            //内容与当前快照一致, 丢弃解析结果
+            return;
+        }
+        publish(value);
+    }
+
+    @Override
+    protected final void reload(InputStream is) {
+        reload(Paths.get(getFilePath()), is);
+    }
+
+    /**
+     * 解析文件内容, 仅当{@link #readMode()}为{@link FileReadMode#MAPPED}或者{@link FileReadMode#DIRECT}时调用
+     * 默认包装成{@link InputStream}并调用{@link #parse(Path, InputStream)}
+     * 返回的数据不能引用{@code buffer}, 因为{@link FileReadMode#DIRECT}时{@code buffer}会被回收复用
+     *
+     * @param path   变化的文件路径
+     * @param buffer 文件内容
+     * @return 新数据, 不能为null
+     */
+    protected T parse(Path path, ByteBuffer buffer) {
+        return parse(path, new ByteBufferInputStream(buffer));
+    }
+
+    /**
+     * 解析文件内容
+     *
+     * @param path 变化的文件路径
+     * @param is   文件流
+     * @return 新数据, 不能为null
+     */
+    protected abstract T parse(Path path, InputStream is);
+
+    /**
+     * 读取依赖的数据, 仅在{@link #parse(Path, InputStream)}中调用
+     * 依赖与本reloadable在同一批次热加载时, 返回依赖暂存的新数据, 否则返回依赖当前数据
+     *
+     * @param dependency 依赖的reloadable
+     * @return 依赖的数据
+     */
+    protected final <D> D input(AbstractSnapshotFileReloadable<D> dependency) {
+        FileReloadGraph.Batch batch = FileReloadGraph.Batch.current();
+        if (Objects.nonNull(batch)) {
+            D staged = batch.staged(dependency);
+            if (Objects.nonNull(staged)) {
+                return staged;
+            }
+        }
+        return dependency.get();
+    }
+
+    /**
+     * 回收被替换的旧数据, 旧快照被替换后延迟{@link #RETIRE_DELAY_MS}调用, 默认什么都不做, 由GC回收
+     * 可重写以释放数据持有的资源, 比如close, 但此时仍持有旧数据的读线程可能访问到已释放的资源,
+     * 因此需保证读线程持有数据不超过{@link #RETIRE_DELAY_MS}, 即{@code kin.hotswap.snapshot.retireDelay}
+     *
+     * @param old 旧数据
+     */
+    protected void retire(T old) throws Exception {
+        //默认由GC回收
+    }
+
+    /**
+     * 发布新数据, 按依赖图批量热加载时则暂存, 由批次统一发布
+     */
+    private void publish(T value) {
+        if (Objects.isNull(value)) {
+            throw new IllegalStateException(String.format("%s parse '%s' return null", getClass().getName(), getFilePath()));
+        }
+
+        FileReloadGraph.Batch batch = FileReloadGraph.Batch.current();
+        if (Objects.nonNull(batch)) {
+            batch.stage(this, value);
+            return;
+        }
+        Snapshot<T> newSnapshot = publishSnapshot(value);
+        if (isInGraph()) {
+            ReloadGeneration.advance(Collections.singletonMap(this, newSnapshot));
+        }
+    }
+
+    /**
+     * 原子替换快照, 并发加载时版本号依然单调递增
+     *
+     * @return 新快照
+     */
+    @SuppressWarnings("unchecked")
+    final Snapshot<T> publishSnapshot(T value) {
+        Snapshot<T> old;
+        Snapshot<T> newSnapshot;
+        do {
+            old = snapshot;
+            //懒加载期间文件再次变化, 新快照仍是stale
+            Stale stale = old != loading ? old.stale : null;
+            newSnapshot = new Snapshot<>(value, old.version + 1, System.currentTimeMillis(), stale);
+        } while (!SNAPSHOT_UPDATER.compareAndSet(this, old, newSnapshot));
+        log.info("{} publish snapshot, version {}", getClass().getName(), newSnapshot.version);
+
+        if (Objects.nonNull(old.value)) {
+            T oldValue = old.value;
+            SnapshotScheduler.SCHEDULER.schedule(() -> {
+                try {
+                    retire(oldValue);
+                } catch (Exception e) {
+                    log.error(String.format("%s retire snapshot encounter error", getClass().getName()), e);
+                }
+            }, RETIRE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return newSnapshot;
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 不可变快照
+     *
+     * @param <T> 数据类型
+     */
+    public static final class Snapshot<T> {
+        /** 数据 */
+        private final T value;
+        /** 版本号, 从1开始 */
+        private final long version;
+        /** 发布时间 */
+        private final long publishTime;
+        /** 懒加载时, 文件已变化但还没加载, 否则为null */
+        private final Stale stale;
+
+        private Snapshot(T value, long version, long publishTime, Stale stale) {
+            this.value = value;
+            this.version = version;
+            this.publishTime = publishTime;
+            this.stale = stale;
+        }
+
+        /**
+         * @return 文件是否已变化但还没加载, 仅懒加载时可能为true
+         */
+        public boolean isStale() {
+            return Objects.nonNull(stale);
+        }
+
+        //getter
+        public T getValue() {
+            return value;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getPublishTime() {
+            return publishTime;
+        }
+    }
+
+    /**
+     * 懒加载时, 已变化但还没加载的文件
+     */
+    private static final class Stale {
+        /** 变化的文件 */
+        private final Path path;
+        /** 文件大小 */
+        private final long size;
+        /** 文件修改时间 */
+        private final long lastModified;
+
+        Stale(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Stale stale = (Stale) o;
+            return size == stale.size && lastModified == stale.lastModified && path.equals(stale.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+
+    /**
+     * 延迟初始化旧快照回收以及懒加载预加载调度线程
+     */
+    private static final class SnapshotScheduler {
+        private static final ScheduledExecutorService SCHEDULER =
+                Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("snapshotScheduler"));
+    }
+}
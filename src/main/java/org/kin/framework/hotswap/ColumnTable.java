@@ -0,0 +1,261 @@
+package org.kin.framework.hotswap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 列式存储的不可变数据表
+ * <p>
+ * 每列以一个基本类型数组存储, 不论多少行, 堆上都只有少量大数组, 不会产生大量小对象, 几乎不增加GC扫描开销
+ * 主键为int或long列, 以开放寻址(线性探测)的long[] + int[]索引, 查找不需要装箱
+ * 除了{@link #getString(int, int)}, 所有访问方法都不会分配内存
+ * <p>
+ * 一般通过{@link ColumnTableFileReloadable}从CSV/TSV文件解析, 使用方式:
+ * <pre>
+ * ColumnTable table = reloadable.get();
+ * int row = table.row(itemId);
+ * if (row >= 0) {
+ *     int price = table.getInt(row, PRICE_COLUMN);
+ * }
+ * </pre>
+ * 同一次读取应复用同一个{@link ColumnTable}实例, 以免前后读到不同版本的数据
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+public final class ColumnTable {
+    /** 列名, 文件没有表头则为null */
+    private final String[] names;
+    /** 列类型 */
+    private final ColumnType[] types;
+    /** 列数据, int[], long[], double[]或者{@link StringColumn} */
+    private final Object[] columns;
+    /** 行数 */
+    private final int rowCount;
+    /** 主键列下标, 小于0则没有主键 */
+    private final int keyColumn;
+    /** 索引主键, 与{@link #indexRows}一一对应 */
+    private final long[] indexKeys;
+    /** 索引行号+1, 0表示空槽 */
+    private final int[] indexRows;
+    /** 索引容量-1 */
+    private final int indexMask;
+
+    ColumnTable(String[] names, ColumnType[] types, Object[] columns, int rowCount, int keyColumn,
+                long[] indexKeys, int[] indexRows) {
+        this.names = names;
+        this.types = types;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.keyColumn = keyColumn;
+        this.indexKeys = indexKeys;
+        this.indexRows = indexRows;
+        this.indexMask = indexRows.length - 1;
+    }
+
+    /**
+     * @return 索引容量, 装载因子不超过0.75, 且为2的n次方
+     */
+    static int indexCapacity(int rowCount) {
+        int capacity = 2;
+        while (capacity < 1 << 30 && capacity * 3L < rowCount * 4L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * @return 主键在索引中的初始槽位
+     */
+    static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * 查找主键所在行
+     *
+     * @param key 主键
+     * @return 行号, 不存在则返回-1
+     */
+    public int row(long key) {
+        int mask = indexMask;
+        int slot = slot(key, mask);
+        int row;
+        while ((row = indexRows[slot]) != 0) {
+            if (indexKeys[slot] == key) {
+                return row - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return 是否存在主键
+     */
+    public boolean contains(long key) {
+        return row(key) >= 0;
+    }
+
+    /**
+     * @return 第{@code row}行的主键
+     * @throws IllegalStateException 没有主键列
+     */
+    public long getKey(int row) {
+        if (keyColumn < 0) {
+            throw new IllegalStateException("table has no key column");
+        }
+        return getLong(row, keyColumn);
+    }
+
+    public int getInt(int row, int column) {
+        checkRow(row);
+        return ((int[]) column(column, ColumnType.INT))[row];
+    }
+
+    /**
+     * int列也可以通过该方法读取
+     */
+    public long getLong(int row, int column) {
+        checkRow(row);
+        if (types[column] == ColumnType.INT) {
+            return ((int[]) columns[column])[row];
+        }
+        return ((long[]) column(column, ColumnType.LONG))[row];
+    }
+
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        return ((double[]) column(column, ColumnType.DOUBLE))[row];
+    }
+
+    /**
+     * 会创建{@link String}, 高频访问应使用{@link #getStringLength(int, int)}以及{@link #copyString(int, int, byte[], int)}
+     */
+    public String getString(int row, int column) {
+        checkRow(row);
+        StringColumn stringColumn = (StringColumn) column(column, ColumnType.STRING);
+        int start = stringColumn.offsets[row];
+        return new String(stringColumn.data, start, stringColumn.offsets[row + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 字符串UTF-8编码后的字节数
+     */
+    public int getStringLength(int row, int column) {
+        checkRow(row);
+        StringColumn stringColumn = (StringColumn) column(column, ColumnType.STRING);
+        return stringColumn.offsets[row + 1] - stringColumn.offsets[row];
+    }
+
+    /**
+     * 复制字符串UTF-8编码后的字节
+     *
+     * @param dst    目标数组, 剩余空间不足则抛出{@link IndexOutOfBoundsException}
+     * @param offset 目标数组起始下标
+     * @return 复制的字节数
+     */
+    public int copyString(int row, int column, byte[] dst, int offset) {
+        checkRow(row);
+        StringColumn stringColumn = (StringColumn) column(column, ColumnType.STRING);
+        int start = stringColumn.offsets[row];
+        int length = stringColumn.offsets[row + 1] - start;
+        System.arraycopy(stringColumn.data, start, dst, offset, length);
+        return length;
+    }
+
+    /**
+     * @param name 列名
+     * @return 列下标, 不存在或者文件没有表头则返回-1
+     */
+    public int columnIndex(String name) {
+        if (Objects.isNull(names)) {
+            return -1;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (name.equals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public ColumnType getColumnType(int column) {
+        return types[column];
+    }
+
+    /**
+     * @return 列数据占用的字节数估算, 包括索引
+     */
+    public long getDataBytes() {
+        long bytes = indexKeys.length * 8L + indexRows.length * 4L;
+        for (Object column : columns) {
+            if (column instanceof int[]) {
+                bytes += ((int[]) column).length * 4L;
+            } else if (column instanceof long[]) {
+                bytes += ((long[]) column).length * 8L;
+            } else if (column instanceof double[]) {
+                bytes += ((double[]) column).length * 8L;
+            } else {
+                StringColumn stringColumn = (StringColumn) column;
+                bytes += stringColumn.data.length + stringColumn.offsets.length * 4L;
+            }
+        }
+        return bytes;
+    }
+
+    private Object column(int column, ColumnType type) {
+        if (types[column] != type) {
+            throw new IllegalArgumentException(String.format("column %d is %s, not %s", column, types[column], type));
+        }
+        return columns[column];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException(String.format("row %d, row count %d", row, rowCount));
+        }
+    }
+
+    //getter
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    public int getKeyColumn() {
+        return keyColumn;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnTable{" +
+                "names=" + Arrays.toString(names) +
+                ", types=" + Arrays.toString(types) +
+                ", rowCount=" + rowCount +
+                ", keyColumn=" + keyColumn +
+                '}';
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 字符串列
+     */
+    static final class StringColumn {
+        /** 所有行的UTF-8字节 */
+        private final byte[] data;
+        /** 第n行字节范围为[offsets[n], offsets[n + 1]) */
+        private final int[] offsets;
+
+        StringColumn(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.kin.framework.hotswap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * 将CSV/TSV数据文件解析为列式存储{@link ColumnTable}的文件热更新
+ * <p>
+ * 适用于千万行级别的静态数据, 相比解析成{@code HashMap<Integer, Row>}, 堆内存占用以及GC压力都小得多
+ * 默认以{@link FileReadMode#MAPPED}读取, 直接从映射内存逐字节解析进基本类型数组, 不经过{@link String}
+ * 解析完成后以新的{@link ColumnTable}原子替换旧的, 读线程通过{@link #get()}获取当前数据表
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+public class ColumnTableFileReloadable extends AbstractSnapshotFileReloadable<ColumnTable> {
+    /** 字段分隔符, CSV为',', TSV为'\t' */
+    private final char delimiter;
+    /** 首行是否为表头 */
+    private final boolean header;
+    /** 主键列下标, 小于0则不建索引 */
+    private final int keyColumn;
+    /** 列类型 */
+    private final ColumnType[] types;
+
+    /**
+     * @param filePath  文件路径
+     * @param delimiter 字段分隔符, CSV为',', TSV为'\t'
+     * @param header    首行是否为表头
+     * @param keyColumn 主键列下标, 必须是{@link ColumnType#INT}或者{@link ColumnType#LONG}列, 且不能重复, 小于0则不建索引
+     * @param types     列类型
+     */
+    public ColumnTableFileReloadable(String filePath, char delimiter, boolean header, int keyColumn, ColumnType... types) {
+        super(filePath);
+        if (delimiter > 0x7F || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException(String.format("invalid delimiter '%s'", delimiter));
+        }
+        if (types.length == 0) {
+            throw new IllegalArgumentException("types is empty");
+        }
+        if (keyColumn >= types.length || (keyColumn >= 0 && types[keyColumn] != ColumnType.INT && types[keyColumn] != ColumnType.LONG)) {
+            throw new IllegalArgumentException(String.format("key column %d must be INT or LONG column", keyColumn));
+        }
+        this.delimiter = delimiter;
+        this.header = header;
+        this.keyColumn = keyColumn;
+        this.types = types.clone();
+    }
+
+    @Override
+    protected FileReadMode readMode() {
+        return FileReadMode.MAPPED;
+    }
+
+    @Override
+    protected ColumnTable parse(Path path, ByteBuffer buffer) {
+        return new ColumnTableParser(buffer, delimiter, header, keyColumn, types).parse();
+    }
+
+    @Override
+    protected ColumnTable parse(Path path, InputStream is) {
+        //重写了readMode()为STREAM时, 先完整读取
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] bytes = new byte[8192];
+        int read;
+        try {
+            while ((read = is.read(bytes)) > 0) {
+                baos.write(bytes, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return parse(path, ByteBuffer.wrap(baos.toByteArray()));
+    }
+}
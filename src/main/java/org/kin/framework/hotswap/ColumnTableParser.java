@@ -0,0 +1,399 @@
+package org.kin.framework.hotswap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 逐字节解析CSV/TSV到{@link ColumnTable}
+ * <p>
+ * 先扫描一遍统计行数, 按行数一次性分配列数组以及索引, 再逐行逐字段直接解析进列数组, 不会为每行或者每个字段创建对象
+ * 支持双引号包围的字段以及""转义, 但字段内不能有换行; 空行会被忽略, 缺失的字段以0或者空字符串填充, 多余的字段会被忽略
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+final class ColumnTableParser {
+    /** 索引最多支持的行数 */
+    private static final int MAX_ROWS = (1 << 30) / 4 * 3;
+    /** double快速解析支持的最大尾数, 2^53, 尾数以及10的幂都能精确表示, 相除结果即是正确舍入的结果 */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** 10的0~22次幂, 都能被double精确表示 */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** 文件内容 */
+    private final ByteBuffer buffer;
+    /** 字段分隔符 */
+    private final byte delimiter;
+    /** 首行是否为表头 */
+    private final boolean header;
+    /** 主键列下标, 小于0则不建索引 */
+    private final int keyColumn;
+    /** 列类型 */
+    private final ColumnType[] types;
+
+    /** 当前解析的行号, 从1开始, 用于错误提示 */
+    private int line;
+    /** 字段起始位置, 不包括引号 */
+    private int fieldStart;
+    /** 字段结束位置(不包括), 不包括引号 */
+    private int fieldEnd;
+    /** 字段是否包含""转义 */
+    private boolean fieldEscaped;
+
+    ColumnTableParser(ByteBuffer buffer, char delimiter, boolean header, int keyColumn, ColumnType[] types) {
+        this.buffer = buffer;
+        this.delimiter = (byte) delimiter;
+        this.header = header;
+        this.keyColumn = keyColumn;
+        this.types = types;
+    }
+
+    ColumnTable parse() {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int capacity = countLines(start, limit);
+        if (capacity > MAX_ROWS) {
+            throw new IllegalStateException(String.format("too many rows, %d > %d", capacity, MAX_ROWS));
+        }
+
+        int columnCount = types.length;
+        Object[] columns = new Object[columnCount];
+        //字符串列构造期间的字节数组以及已使用字节数
+        byte[][] stringData = new byte[columnCount][];
+        int[] stringSizes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            switch (types[i]) {
+                case INT:
+                    columns[i] = new int[capacity];
+                    break;
+                case LONG:
+                    columns[i] = new long[capacity];
+                    break;
+                case DOUBLE:
+                    columns[i] = new double[capacity];
+                    break;
+                default:
+                    columns[i] = new int[capacity + 1];
+                    stringData[i] = new byte[Math.max(capacity, 16)];
+            }
+        }
+        int[] indexRows = new int[keyColumn >= 0 ? ColumnTable.indexCapacity(capacity) : 2];
+        long[] indexKeys = new long[indexRows.length];
+        int indexMask = indexRows.length - 1;
+
+        String[] names = null;
+        int rowCount = 0;
+        int pos = start;
+        while (pos < limit) {
+            line++;
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > pos && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (header && line == 1) {
+                names = parseHeader(pos, lineEnd);
+                pos = next;
+                continue;
+            }
+            if (lineEnd == pos) {
+                //空行
+                pos = next;
+                continue;
+            }
+
+            int row = rowCount++;
+            int fieldPos = pos;
+            for (int column = 0; column < columnCount; column++) {
+                boolean present = fieldPos <= lineEnd;
+                if (present) {
+                    fieldPos = nextField(fieldPos, lineEnd);
+                } else {
+                    fieldStart = fieldEnd = lineEnd;
+                    fieldEscaped = false;
+                }
+                switch (types[column]) {
+                    case INT:
+                        long value = parseLong(column);
+                        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                            throw new IllegalStateException(String.format("line %d column %d overflow int", line, column));
+                        }
+                        ((int[]) columns[column])[row] = (int) value;
+                        break;
+                    case LONG:
+                        ((long[]) columns[column])[row] = parseLong(column);
+                        break;
+                    case DOUBLE:
+                        ((double[]) columns[column])[row] = parseDouble(column);
+                        break;
+                    default:
+                        int[] offsets = (int[]) columns[column];
+                        byte[] data = stringData[column];
+                        int size = stringSizes[column];
+                        int length = fieldEnd - fieldStart;
+                        if (size + length > data.length) {
+                            data = Arrays.copyOf(data, (int) Math.min(Math.max((long) data.length * 2, (long) size + length), Integer.MAX_VALUE - 8));
+                            stringData[column] = data;
+                        }
+                        size = copyField(data, size);
+                        stringSizes[column] = size;
+                        offsets[row + 1] = size;
+                }
+            }
+
+            if (keyColumn >= 0) {
+                long key = types[keyColumn] == ColumnType.INT ? ((int[]) columns[keyColumn])[row] : ((long[]) columns[keyColumn])[row];
+                int slot = ColumnTable.slot(key, indexMask);
+                while (indexRows[slot] != 0) {
+                    if (indexKeys[slot] == key) {
+                        throw new IllegalStateException(String.format("line %d duplicate key %d", line, key));
+                    }
+                    slot = (slot + 1) & indexMask;
+                }
+                indexKeys[slot] = key;
+                indexRows[slot] = row + 1;
+            }
+            pos = next;
+        }
+
+        //去掉空行以及表头多分配的空间
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = trim(types[i], columns[i], stringData[i], stringSizes[i], rowCount);
+        }
+        return new ColumnTable(names, types.clone(), columns, rowCount, keyColumn, indexKeys, indexRows);
+    }
+
+    /**
+     * @return 行数上限, 包括表头以及空行
+     */
+    private int countLines(int start, int limit) {
+        long lines = 0;
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                lines++;
+            }
+        }
+        if (limit > start && buffer.get(limit - 1) != '\n') {
+            //最后一行没有换行符
+            lines++;
+        }
+        return (int) Math.min(lines, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 定位下一个字段
+     *
+     * @param pos     字段起始位置
+     * @param lineEnd 行结束位置
+     * @return 下一个字段的起始位置, 大于{@code lineEnd}则表示没有下一个字段
+     */
+    private int nextField(int pos, int lineEnd) {
+        fieldEscaped = false;
+        if (pos < lineEnd && buffer.get(pos) == '"') {
+            int i = pos + 1;
+            while (i < lineEnd) {
+                if (buffer.get(i) == '"') {
+                    if (i + 1 < lineEnd && buffer.get(i + 1) == '"') {
+                        fieldEscaped = true;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                i++;
+            }
+            fieldStart = pos + 1;
+            fieldEnd = Math.min(i, lineEnd);
+            //跳过闭合引号到分隔符之间的内容
+            int delimiterPos = i;
+            while (delimiterPos < lineEnd && buffer.get(delimiterPos) != delimiter) {
+                delimiterPos++;
+            }
+            return delimiterPos + 1;
+        }
+
+        int i = pos;
+        while (i < lineEnd && buffer.get(i) != delimiter) {
+            i++;
+        }
+        fieldStart = pos;
+        fieldEnd = i;
+        return i + 1;
+    }
+
+    /**
+     * 复制当前字段到{@code data}, 并处理""转义
+     *
+     * @return 复制后{@code data}已使用字节数
+     */
+    private int copyField(byte[] data, int size) {
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            byte b = buffer.get(i);
+            data[size++] = b;
+            if (fieldEscaped && b == '"') {
+                //跳过转义的第二个引号
+                i++;
+            }
+        }
+        return size;
+    }
+
+    private long parseLong(int column) {
+        int i = fieldStart;
+        int end = fieldEnd;
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        while (end > i && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        if (i == end) {
+            return 0;
+        }
+
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        if (i == end) {
+            throw notNumber(column);
+        }
+        //以负数累加, 以便支持Long.MIN_VALUE
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw notNumber(column);
+            }
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw new IllegalStateException(String.format("line %d column %d overflow long", line, column));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new IllegalStateException(String.format("line %d column %d overflow long", line, column));
+            }
+            return -value;
+        }
+        return value;
+    }
+
+    private double parseDouble(int column) {
+        int i = fieldStart;
+        int end = fieldEnd;
+        while (i < end && buffer.get(i) == ' ') {
+            i++;
+        }
+        while (end > i && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        if (i == end) {
+            return 0;
+        }
+
+        //快速路径, 仅处理不带指数的十进制小数
+        int start = i;
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean digits = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !dot) {
+                dot = true;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) {
+                break;
+            }
+            digits = true;
+            mantissa = mantissa * 10 + digit;
+            if (dot) {
+                scale++;
+            }
+        }
+        if (i == end && digits && scale < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[scale];
+            return negative ? -value : value;
+        }
+
+        //指数, 特殊值或者精度较高, 交由jdk解析
+        byte[] bytes = new byte[end - start];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buffer.get(start + j);
+        }
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw notNumber(column);
+        }
+    }
+
+    private IllegalStateException notNumber(int column) {
+        byte[] bytes = new byte[fieldEnd - fieldStart];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(fieldStart + i);
+        }
+        return new IllegalStateException(String.format("line %d column %d '%s' is not a %s",
+                line, column, new String(bytes, StandardCharsets.UTF_8), types[column]));
+    }
+
+    /**
+     * 解析表头
+     */
+    private String[] parseHeader(int pos, int lineEnd) {
+        String[] names = new String[types.length];
+        byte[] data = new byte[Math.max(lineEnd - pos, 0)];
+        for (int column = 0; column < names.length; column++) {
+            if (pos > lineEnd) {
+                break;
+            }
+            pos = nextField(pos, lineEnd);
+            names[column] = new String(data, 0, copyField(data, 0), StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    /**
+     * 截断多分配的空间, 并构造字符串列
+     */
+    private static Object trim(ColumnType type, Object column, byte[] stringData, int stringSize, int rowCount) {
+        switch (type) {
+            case INT:
+                int[] ints = (int[]) column;
+                return ints.length == rowCount ? ints : Arrays.copyOf(ints, rowCount);
+            case LONG:
+                long[] longs = (long[]) column;
+                return longs.length == rowCount ? longs : Arrays.copyOf(longs, rowCount);
+            case DOUBLE:
+                double[] doubles = (double[]) column;
+                return doubles.length == rowCount ? doubles : Arrays.copyOf(doubles, rowCount);
+            default:
+                int[] offsets = (int[]) column;
+                return new ColumnTable.StringColumn(
+                        stringData.length == stringSize ? stringData : Arrays.copyOf(stringData, stringSize),
+                        offsets.length == rowCount + 1 ? offsets : Arrays.copyOf(offsets, rowCount + 1));
+        }
+    }
+}
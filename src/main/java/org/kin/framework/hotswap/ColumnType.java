@@ -0,0 +1,18 @@
+package org.kin.framework.hotswap;
+
+/**
+ * {@link ColumnTable}列类型
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+public enum ColumnType {
+    /** int, 以int[]存储 */
+    INT,
+    /** long, 以long[]存储 */
+    LONG,
+    /** double, 以double[]存储 */
+    DOUBLE,
+    /** 字符串, 所有行的UTF-8字节连续存储在一个byte[], 另以int[]记录每行的偏移 */
+    STRING,
+}
@@ -0,0 +1,151 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * direct {@link ByteBuffer}池, 用于{@link FileReadMode#DIRECT}
+ * <p>
+ * 按2的n次方容量分桶, 每个桶最多缓存{@link #MAX_PER_BUCKET}个
+ * 超过{@link #MAX_POOLED_CAPACITY}的buffer不池化, 桶已满时归还的buffer也不池化, 归还时立即释放其direct内存,
+ * 不等待GC回收buffer对象, 以免GC不频繁时direct内存持续增长直至OOM. 因此归还后不能再访问该buffer及其衍生的buffer
+ * 当前jdk不支持主动释放时, 则仍由GC回收
+ *
+ * @author huangjianqin
+ * @date 2022/3/11
+ */
+final class DirectBufferPool {
+    private static final Logger log = LoggerFactory.getLogger(DirectBufferPool.class);
+    /** 最小容量, 4k */
+    private static final int MIN_CAPACITY_SHIFT = 12;
+    /** 允许池化的最大buffer容量, 默认64m */
+    private static final int MAX_POOLED_CAPACITY = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.directBuffer.maxPooled", String.valueOf(64 * 1024 * 1024)));
+    /** 每个桶最多缓存buffer数量 */
+    private static final int MAX_PER_BUCKET = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.directBuffer.maxPerBucket", "2"));
+    /** 主动释放direct buffer内存, 当前jdk不支持则为null */
+    private static final Consumer<ByteBuffer> FREE = freeFunction();
+    /** 单例 */
+    static final DirectBufferPool INSTANCE = new DirectBufferPool();
+
+    /** index -> log2(容量) - {@link #MIN_CAPACITY_SHIFT} */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final Queue<ByteBuffer>[] buckets = new Queue[32 - MIN_CAPACITY_SHIFT];
+    /** 每个桶缓存的buffer数量 */
+    private final AtomicIntegerArray bucketSizes = new AtomicIntegerArray(buckets.length);
+
+    private DirectBufferPool() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * 获取容量至少为{@code size}的direct buffer, position=0, limit={@code size}
+     */
+    ByteBuffer acquire(int size) {
+        int shift = shift(size);
+        ByteBuffer buffer = null;
+        if (shift >= 0) {
+            buffer = buckets[shift].poll();
+            if (Objects.nonNull(buffer)) {
+                bucketSizes.decrementAndGet(shift);
+            }
+        }
+        if (Objects.isNull(buffer)) {
+            buffer = ByteBuffer.allocateDirect(shift >= 0 ? 1 << (shift + MIN_CAPACITY_SHIFT) : size);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * 归还direct buffer, 不池化的buffer则立即释放其direct内存
+     */
+    void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int shift = shift(capacity);
+        if (shift < 0 || (1 << (shift + MIN_CAPACITY_SHIFT)) != capacity) {
+            //不池化
+            free(buffer);
+            return;
+        }
+        if (bucketSizes.incrementAndGet(shift) > MAX_PER_BUCKET) {
+            bucketSizes.decrementAndGet(shift);
+            free(buffer);
+            return;
+        }
+        buckets[shift].offer(buffer);
+    }
+
+    /**
+     * 释放direct内存
+     */
+    private static void free(ByteBuffer buffer) {
+        if (Objects.nonNull(FREE)) {
+            FREE.accept(buffer);
+        }
+    }
+
+    /**
+     * jdk9+通过{@code sun.misc.Unsafe#invokeCleaner(ByteBuffer)}, jdk8通过{@code sun.nio.ch.DirectBuffer#cleaner()}释放direct内存
+     *
+     * @return 主动释放direct buffer内存的方法, 当前jdk不支持则返回null
+     */
+    private static Consumer<ByteBuffer> freeFunction() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (Exception e) {
+            //jdk8
+        }
+
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object bufferCleaner = invoke(cleaner, buffer);
+                if (Objects.nonNull(bufferCleaner)) {
+                    invoke(clean, bufferCleaner);
+                }
+            };
+        } catch (Exception e) {
+            log.warn("direct buffer can not be freed explicitly, it will be freed by gc", e);
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (Exception e) {
+            log.warn("free direct buffer encounter error", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return 桶index, 超过{@link #MAX_POOLED_CAPACITY}则返回-1
+     */
+    private static int shift(int size) {
+        if (size > MAX_POOLED_CAPACITY) {
+            return -1;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+        return Math.max(shift - MIN_CAPACITY_SHIFT, 0);
+    }
+}
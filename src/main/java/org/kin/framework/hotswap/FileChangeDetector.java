@@ -0,0 +1,106 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SysUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 文件变化检测策略
+ * <p>
+ * 内置3种策略, 通过kin.hotswap.detector配置:
+ * 1. watch, 默认, 基于{@link java.nio.file.WatchService}, 依赖文件系统事件, 部分文件系统(overlay, nfs等)可能收不到事件
+ * 2. polling, 定时扫描目录, 对比文件大小, 修改时间以及inode, 不依赖文件系统事件
+ * 3. hybrid, 基于文件系统事件, 同时定时全量扫描校对, 以补偿丢失的事件
+ *
+ * @author huangjianqin
+ * @date 2022/3/10
+ */
+interface FileChangeDetector {
+    /** 策略 */
+    String DETECTOR = SysUtils.getSysProperty("kin.hotswap.detector", "watch");
+    /** polling策略扫描间隔(ms) */
+    long POLL_INTERVAL_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.poll.interval", "1000"));
+    /** hybrid策略全量扫描校对间隔(ms) */
+    long RECONCILE_INTERVAL_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.reconcile.interval", "30000"));
+
+    /**
+     * 根据配置创建文件变化检测策略
+     */
+    static FileChangeDetector create() throws IOException {
+        switch (DETECTOR) {
+            case "polling":
+                return new PollingFileChangeDetector(POLL_INTERVAL_MS);
+            case "hybrid":
+                return new HybridFileChangeDetector(RECONCILE_INTERVAL_MS);
+            case "watch":
+                return new WatchServiceFileChangeDetector();
+            default:
+                throw new IllegalArgumentException(String.format("unknown file change detector '%s'", DETECTOR));
+        }
+    }
+
+    /**
+     * 监听目录
+     *
+     * @param dir 标准化后的目录路径
+     */
+    void watch(Path dir) throws IOException;
+
+    /**
+     * 取消监听目录
+     *
+     * @param dir 标准化后的目录路径
+     */
+    void unwatch(Path dir);
+
+    /**
+     * 等待文件变化
+     *
+     * @param timeoutMs 最多等待时间(ms), 小于0则一直等待直到有文件变化
+     * @return 文件变化, 超时则返回空list
+     */
+    List<FileChange> poll(long timeoutMs) throws InterruptedException;
+
+    /**
+     * 释放资源
+     */
+    void close();
+
+    /**
+     * 文件变化类型
+     */
+    enum Kind {
+        /** 新建, 包括原子rename覆盖 */
+        CREATE,
+        /** 修改 */
+        MODIFY,
+        /** 事件丢失, 此时{@link FileChange#getPath()}是目录, 需检查目录下所有文件 */
+        OVERFLOW,
+    }
+
+    /**
+     * 文件变化
+     */
+    final class FileChange {
+        /** 标准化后的文件路径, {@link Kind#OVERFLOW}则是目录路径 */
+        private final Path path;
+        /** 变化类型 */
+        private final Kind kind;
+
+        FileChange(Path path, Kind kind) {
+            this.path = path;
+            this.kind = kind;
+        }
+
+        //getter
+        public Path getPath() {
+            return path;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+    }
+}
@@ -1,43 +1,71 @@
 package org.kin.framework.hotswap;
 
 import org.kin.framework.Closeable;
-import org.kin.framework.concurrent.ExecutionContext;
 import org.kin.framework.hotswap.jclass.ClassHotswap;
+import org.kin.framework.hotswap.jclass.HotswapResult;
 import org.kin.framework.utils.ExceptionUtils;
-import org.kin.framework.utils.ExtensionLoader;
 import org.kin.framework.utils.SysUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 文件监听器
  * 单例模式
- * 利用nio 新api监听文件变换
+ * 默认利用nio 新api监听文件变换
  * 该api底层本质上是监听了操作系统的文件系统触发的文件更改事件
+ * 也可以配置成定时扫描或者两者混合, 详见{@link FileChangeDetector}
  * <p>
  * 异步热加载文件 同步类热更新
+ * 类热更新与文件热加载在不同的线程池执行, 相互隔离, 详见{@link ReloadExecutors}
+ * 同一文件同时最多只有一个热加载在执行, 详见{@link FileReloadLanes}
+ * 热更类目录下的补丁写完才会被认领并热更新, 处理完归档, 详见{@link PatchInbox}
  *
  * @author huangjianqin
  * @date 2018/2/1
  */
 public class FileMonitor extends Thread implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(FileMonitor.class);
-    /** 文件变化监听服务, 基于文件系统事件触发 */
-    private WatchService watchService;
-    /** hash(file name) -> Reloadable 实例 */
-    private Map<Integer, AbstractFileReloadable> monitorItems;
-    /** 异步热加载文件以及类热更新执行线程 */
-    private ExecutionContext executionContext;
+    /**
+     * 文件变化事件静默期(ms), 即该时间内没有新的文件变化事件, 才批量触发文件热加载以及类热更新
+     * 用于合并短时间内连续的文件变化事件, 比如批量复制class文件, 编辑器多次保存
+     */
+    private static final long QUIET_PERIOD_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.quietPeriod", "500"));
+    /** 从第一个文件变化事件开始, 最多延迟多久(ms)必须批量触发一次, 防止文件持续变化导致一直不触发 */
+    private static final long MAX_DELAY_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.maxDelay", "3000"));
+    /** 文件变化检测策略 */
+    private FileChangeDetector detector;
+    /** 文件监听注册表, 目录 -> (文件名 -> Reloadable 实例) */
+    private FileWatchRegistry registry;
+    /** 热更class存储目录绝对路径 */
+    private Path classesPath;
+    /** 热更class补丁收件箱 */
+    private PatchInbox patchInbox;
+    /** 类热更新执行线程 */
+    private ExecutorService classHotswapExecutor;
+    /** 异步热加载文件执行线程 */
+    private ExecutorService fileReloadExecutor;
+    /** 文件热加载通道, 保证同一文件同时最多只有一个热加载在执行 */
+    private FileReloadLanes reloadLanes;
+    /** 依赖图, 存在依赖关系的文件按依赖顺序批量热加载 */
+    private FileReloadGraph reloadGraph;
     private volatile boolean isStopped = false;
-    /** 热更新listeners */
-    private final List<HotswapListener> listeners = ExtensionLoader.getExtensions(HotswapListener.class);
+    /** 待热更新的class文件或zip文件, 按路径去重, 仅监听线程访问 */
+    private final Set<Path> changedClasses = new LinkedHashSet<>();
+    /** 待热加载的文件, 按路径去重, 仅监听线程访问 */
+    private final Map<Path, List<AbstractFileReloadable>> changedFiles = new LinkedHashMap<>();
+    /** 当前批次第一个文件变化事件时间 */
+    private long firstEventTime;
+    /** 当前批次最后一个文件变化事件时间 */
+    private long lastEventTime;
+    /** 类热更新成功后, 触发{@link HotswapListener} */
+    private final HotswapListenerDispatcher listenerDispatcher = new HotswapListenerDispatcher();
 
     /** 单例 */
     private static final FileMonitor INSTANCE = new FileMonitor();
@@ -55,14 +83,18 @@ public class FileMonitor extends Thread implements Closeable {
     }
 
     private void init() throws IOException {
-        watchService = FileSystems.getDefault().newWatchService();
+        detector = FileChangeDetector.create();
 
-        monitorItems = new ConcurrentHashMap<>();
-        executionContext = ExecutionContext.elastic(1, SysUtils.CPU_NUM, "fileReload");
+        registry = new FileWatchRegistry(detector);
+        classHotswapExecutor = ReloadExecutors.classHotswap();
+        fileReloadExecutor = ReloadExecutors.fileReload();
+        reloadLanes = new FileReloadLanes(fileReloadExecutor);
+        reloadGraph = new FileReloadGraph(fileReloadExecutor);
 
         //监听热更class存储目录
-        Path classesPath = Paths.get(ClassHotswap.CLASSPATH);
-        classesPath.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY);
+        classesPath = FileWatchRegistry.normalize(Paths.get(ClassHotswap.CLASSPATH));
+        detector.watch(classesPath);
+        patchInbox = new PatchInbox(classesPath);
 
         monitorJVMClose();
     }
@@ -81,84 +113,167 @@ public class FileMonitor extends Thread implements Closeable {
     public void run() {
         log.info("file monitor start");
         while (!isStopped && !Thread.currentThread().isInterrupted()) {
-            List<Path> changedClasses = new ArrayList<>();
             try {
-                WatchKey key = watchService.take();
-                //变化的路径
-                Path parentPath = (Path) key.watchable();
-                List<WatchEvent<?>> events = key.pollEvents();
-                events.forEach(event -> {
-                    //变化item的名字(文件名或者文件夹名)
-                    String itemName = event.context().toString();
-                    int hashKey = itemName.hashCode();
-                    //真实路径
-                    String parentPathStr = parentPath.toString();
-                    Path path = Paths.get(parentPathStr, itemName);
-                    log.info("'{}' changed", path);
-
-                    try {
-                        if (Files.isHidden(path) ||
-                                !Files.isReadable(path) ||
-                                Files.isDirectory(path)) {
-                            //过滤隐藏文件, 不可读文件和目录
-                            return;
-                        }
-                    } catch (IOException e) {
-                        ExceptionUtils.throwExt(e);
-                    }
+                List<FileChangeDetector.FileChange> changes;
+                //有还没写完的补丁, 则最多等待至下次检查
+                long patchWaitMs = patchInbox.nextCheckDelay();
+                if (changedClasses.isEmpty() && changedFiles.isEmpty()) {
+                    //没有待处理的变化, 阻塞等待
+                    changes = detector.poll(patchWaitMs);
+                } else {
+                    long now = System.currentTimeMillis();
+                    long waitMs = Math.max(Math.min(lastEventTime + QUIET_PERIOD_MS, firstEventTime + MAX_DELAY_MS) - now, 0);
+                    changes = detector.poll(patchWaitMs >= 0 ? Math.min(waitMs, patchWaitMs) : waitMs);
+                }
 
-                    if (parentPathStr.contains(ClassHotswap.CLASSPATH)) {
-                        //在热更类目录下, 都认为是待热更class文件或者含class文件的zip文件
-                        changedClasses.add(path);
-                    } else {
-                        //处理文件热更新
-                        AbstractFileReloadable fileReloadable = monitorItems.get(hashKey);
-                        if (fileReloadable != null) {
-                            executionContext.execute(() -> {
-                                try {
-                                    long startTime = System.currentTimeMillis();
-                                    try (InputStream is = new FileInputStream(path.toFile())) {
-                                        fileReloadable.reload(is);
-                                    }
-                                    long endTime = System.currentTimeMillis();
-                                    log.info("file reload '{}' finished, time cost {} ms", path, endTime - startTime);
-                                } catch (IOException e) {
-                                    log.error(String.format("file '%s' reload encounter error", path), e);
-                                }
-                            });
-                        }
-                    }
-                });
-                //重置状态，让key等待事件
-                key.reset();
+                if (!changes.isEmpty()) {
+                    collectChanges(changes);
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                //shutdown
+                break;
             }
 
-            if (changedClasses.size() > 0) {
-                //类热更新
-                executionContext.execute(() -> {
-                    if (ClassHotswap.instance().hotswap(changedClasses)) {
-                        //延迟5s执行
-                        new Timer().schedule(new TimerTask() {
-                            @Override
-                            public void run() {
-                                for (HotswapListener listener : listeners) {
-                                    try {
-                                        listener.afterHotswap();
-                                    } catch (Exception e) {
-                                        log.error("encounter error, when trigger HotswapListener", e);
-                                    }
-                                }
-                            }
-                        }, 5 * 1000);
-                    }
-                });
+            if (!changedClasses.isEmpty() || !changedFiles.isEmpty()) {
+                long now = System.currentTimeMillis();
+                if (now - lastEventTime >= QUIET_PERIOD_MS || now - firstEventTime >= MAX_DELAY_MS) {
+                    //静默期内没有新的事件或者超过最大延迟, 则批量触发
+                    flush();
+                }
+            }
+
+            if (patchInbox.nextCheckDelay() == 0) {
+                hotswap();
             }
         }
         log.info("file monitor shutdown");
     }
 
+    /**
+     * 收集文件变化, 按路径去重
+     */
+    private void collectChanges(List<FileChangeDetector.FileChange> changes) {
+        boolean collected = false;
+        for (FileChangeDetector.FileChange change : changes) {
+            Path path = change.getPath();
+            if (change.getKind() == FileChangeDetector.Kind.OVERFLOW) {
+                //事件丢失, 则认为该目录下所有文件都变化了
+                log.warn("'{}' file change events overflow, treat all files in it as changed", path);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                    for (Path file : stream) {
+                        collected |= collectChange(file, FileChangeDetector.Kind.MODIFY);
+                    }
+                } catch (IOException e) {
+                    log.error(String.format("list directory '%s' error", path), e);
+                }
+            } else {
+                collected |= collectChange(path, change.getKind());
+            }
+        }
+
+        if (collected) {
+            long now = System.currentTimeMillis();
+            if (firstEventTime <= 0) {
+                firstEventTime = now;
+            }
+            lastEventTime = now;
+        }
+    }
+
+    /**
+     * 收集单个文件变化
+     *
+     * @return 是否需要触发文件热加载或类热更新
+     */
+    private boolean collectChange(Path path, FileChangeDetector.Kind kind) {
+        log.info("'{}' changed", path);
+        try {
+            if (Files.isDirectory(path)) {
+                if (kind == FileChangeDetector.Kind.CREATE) {
+                    //新建的子目录, 如果属于递归监听的目录树, 则需监听
+                    registry.onDirectoryCreated(path);
+                }
+                return false;
+            }
+            if (Files.isHidden(path) ||
+                    !Files.isReadable(path)) {
+                //过滤隐藏文件, 不可读文件
+                return false;
+            }
+        } catch (IOException e) {
+            log.error(String.format("check changed file '%s' error", path), e);
+            return false;
+        }
+
+        Path parentPath = path.getParent();
+        if (parentPath.equals(classesPath)) {
+            //在热更类目录下, 都认为是待热更class文件或者含class文件的zip文件
+            changedClasses.add(path);
+            return true;
+        }
+
+        //处理文件热更新
+        List<AbstractFileReloadable> fileReloadables = registry.match(parentPath, path.getFileName().toString());
+        if (!fileReloadables.isEmpty()) {
+            changedFiles.put(path, fileReloadables);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 批量触发文件热加载以及类热更新
+     */
+    private void flush() {
+        HotswapStatistics.instance().record(HotswapPhase.EVENT_DISPATCH, null,
+                TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - firstEventTime));
+        //存在依赖关系的reloadable, 按依赖图批量热加载
+        Map<AbstractFileReloadable, Set<Path>> graphChanged = new LinkedHashMap<>();
+        for (Map.Entry<Path, List<AbstractFileReloadable>> entry : changedFiles.entrySet()) {
+            Path path = entry.getKey();
+            for (AbstractFileReloadable fileReloadable : entry.getValue()) {
+                if (fileReloadable.isInGraph()) {
+                    graphChanged.computeIfAbsent(fileReloadable, k -> new LinkedHashSet<>()).add(path);
+                } else {
+                    reloadLanes.submit(path, fileReloadable);
+                }
+            }
+        }
+        if (!graphChanged.isEmpty()) {
+            reloadGraph.submit(graphChanged);
+        }
+
+        //补丁写完才会被认领并热更新
+        for (Path changedClass : changedClasses) {
+            patchInbox.offer(changedClass);
+        }
+
+        changedFiles.clear();
+        changedClasses.clear();
+        firstEventTime = 0;
+        lastEventTime = 0;
+    }
+
+    /**
+     * 认领已写完的补丁并类热更新
+     */
+    private void hotswap() {
+        List<Path> claimed = patchInbox.claim();
+        if (claimed.isEmpty()) {
+            return;
+        }
+
+        classHotswapExecutor.execute(() -> {
+            HotswapResult result = ClassHotswap.instance().hotswapWithResult(claimed);
+            patchInbox.archive(claimed, result);
+            if (result.isSuccess()) {
+                listenerDispatcher.dispatch(result);
+            }
+        });
+    }
+
     /**
      * shutdown
      */
@@ -170,14 +285,10 @@ public class FileMonitor extends Thread implements Closeable {
         isStopped = true;
         //中断监控线程, 让本线程退出
         interrupt();
-        try {
-            watchService.close();
-        } catch (IOException e) {
-            ExceptionUtils.throwExt(e);
-        }
-        executionContext.shutdown();
-        //help GC
-        monitorItems = null;
+        detector.close();
+        classHotswapExecutor.shutdown();
+        fileReloadExecutor.shutdown();
+        listenerDispatcher.shutdown();
     }
 
     /**
@@ -203,27 +314,92 @@ public class FileMonitor extends Thread implements Closeable {
      */
     public void monitorFile(Path path, AbstractFileReloadable fileReloadable) {
         checkStatus();
-        if (!Files.isDirectory(path)) {
-            try {
-                monitorFile0(path.getParent(), path.getFileName().toString(), fileReloadable);
-            } catch (IOException e) {
-                ExceptionUtils.throwExt(e);
-            }
-        } else {
+        if (Files.isDirectory(path)) {
             throw new IllegalStateException("monitor file is a directory");
         }
+        try {
+            registry.register(path, fileReloadable);
+        } catch (IOException e) {
+            ExceptionUtils.throwExt(e);
+        }
     }
 
     /**
-     * 监听文件变化
+     * 监听目录下匹配glob的文件变化
+     *
+     * @param dir       目录
+     * @param glob      glob, 匹配相对于{@code dir}的路径, 比如*.json; 监听整个目录树时, 子目录下的文件则需类似**&#47;*.json
+     * @param recursive 是否监听整个目录树, 包括后续新建的子目录
      */
-    private void monitorFile0(Path file, String itemName, AbstractFileReloadable fileReloadable) throws IOException {
-        int key = itemName.hashCode();
-        AbstractFileReloadable old = monitorItems.putIfAbsent(key, fileReloadable);
-        if (Objects.nonNull(old)) {
-            throw new IllegalStateException(String.format("file '%s' has been monitored", file));
+    public void monitorDirectory(Path dir, String glob, boolean recursive, AbstractFileReloadable fileReloadable) {
+        checkStatus();
+        try {
+            registry.register(dir, glob, recursive, fileReloadable);
+        } catch (IOException e) {
+            ExceptionUtils.throwExt(e);
         }
-        file.register(watchService, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * 取消{@code fileReloadable}对{@code path}的监听
+     */
+    public void unmonitorFile(Path path, AbstractFileReloadable fileReloadable) {
+        checkStatus();
+        registry.unregister(path, fileReloadable);
+    }
+
+    /**
+     * 取消{@code fileReloadable}所有的监听
+     */
+    public void unmonitor(AbstractFileReloadable fileReloadable) {
+        checkStatus();
+        registry.unregister(fileReloadable);
+        reloadLanes.remove(fileReloadable);
+        fileReloadable.detach();
+    }
+
+    /**
+     * 中断{@code path}正在执行的文件热加载
+     *
+     * @return 是否有正在执行的文件热加载被中断
+     */
+    public boolean cancelReload(Path path) {
+        return reloadLanes.cancel(FileWatchRegistry.normalize(path));
+    }
+
+    /**
+     * @return 异步热加载文件执行线程
+     */
+    Executor getFileReloadExecutor() {
+        return fileReloadExecutor;
+    }
+
+    /**
+     * @return 正在执行以及等待执行的文件热加载数
+     */
+    public int getReloadQueueDepth() {
+        return reloadLanes.queueDepth();
+    }
+
+    /**
+     * @return 执行期间文件多次变化, 被最新版本取代而丢弃的文件热加载次数
+     */
+    public long getDroppedReloadCount() {
+        return reloadLanes.droppedCount();
+    }
+
+    /**
+     * @return 文件内容没有变化而跳过的文件热加载次数
+     */
+    public long getSkippedReloadCount() {
+        return AbstractFileReloadable.SKIPPED_COUNT.sum();
+    }
+
+    /**
+     * @return 文件热加载线程池满而被拒绝的文件热加载次数
+     */
+    public long getRejectedReloadCount() {
+        return reloadLanes.rejectedCount();
     }
 
     @Override
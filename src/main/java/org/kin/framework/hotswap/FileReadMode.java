@@ -0,0 +1,20 @@
+package org.kin.framework.hotswap;
+
+/**
+ * 热加载文件时, 文件内容的读取方式
+ *
+ * @author huangjianqin
+ * @date 2022/3/11
+ */
+public enum FileReadMode {
+    /**
+     * {@link java.io.FileInputStream}, 由{@link AbstractFileReloadable}自行读取
+     * 开启{@link AbstractFileReloadable#skipUnchanged()}时, 小文件先整体读入堆内存计算内容hash, 内容没有变化则跳过解析,
+     * 超过{@code kin.hotswap.reload.stream.prereadMaxBytes}(默认8MB)的大文件则在解析的同时流式计算hash, 不额外占用内存, 但无法跳过解析
+     */
+    STREAM,
+    /** 只读的{@link java.nio.MappedByteBuffer}, 内容由操作系统按需换页, 不占用堆内存, 适合大文件 */
+    MAPPED,
+    /** 池化的direct {@link java.nio.ByteBuffer}, reload结束后会被回收复用, 不能在reload之外持有 */
+    DIRECT,
+}
@@ -0,0 +1,274 @@
+package org.kin.framework.hotswap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按依赖图批量热加载存在依赖关系的{@link AbstractFileReloadable}
+ * <p>
+ * 同一次flush变化的reloadable, 加上直接或间接依赖它们的reloadable, 构成一个批次
+ * 批次内没有依赖关系的reloadable并行热加载, 依赖全部热加载完成后, 才热加载依赖方
+ * {@link AbstractSnapshotFileReloadable}解析出来的数据先暂存, 整批成功后再一起发布, 并生成新的{@link ReloadGeneration}
+ * 某个reloadable热加载失败, 则跳过依赖它的reloadable, 整批暂存的数据都不发布, 非快照的reloadable则已经生效, 无法回滚
+ * <p>
+ * 同时最多只有一个批次在执行, 执行期间再次变化的reloadable合并到下一批次
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+final class FileReloadGraph {
+    private static final Logger log = LoggerFactory.getLogger(FileReloadGraph.class);
+    /** 当前线程正在执行的批次 */
+    private static final ThreadLocal<Batch> CURRENT = new ThreadLocal<>();
+
+    /** 执行文件热加载的线程池 */
+    private final Executor executor;
+    /** 待热加载的reloadable及其变化的文件 */
+    private Map<AbstractFileReloadable, Set<Path>> pending = new LinkedHashMap<>();
+    /** 是否有批次正在执行 */
+    private boolean running;
+
+    FileReloadGraph(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交一批变化的reloadable
+     *
+     * @param changed key -> reloadable, value -> 变化的文件
+     */
+    void submit(Map<AbstractFileReloadable, Set<Path>> changed) {
+        synchronized (this) {
+            changed.forEach((fileReloadable, paths) ->
+                    pending.computeIfAbsent(fileReloadable, k -> new LinkedHashSet<>()).addAll(paths));
+        }
+        next();
+    }
+
+    /**
+     * 没有批次正在执行, 则执行下一批次
+     */
+    private void next() {
+        Map<AbstractFileReloadable, Set<Path>> changed;
+        synchronized (this) {
+            if (running || pending.isEmpty()) {
+                return;
+            }
+            running = true;
+            changed = pending;
+            pending = new LinkedHashMap<>();
+        }
+        //不持有锁执行, 线程池满时可能在当前线程执行热加载
+        new Batch(this, changed).start();
+    }
+
+    /**
+     * 批次执行完成
+     */
+    private void finish() {
+        synchronized (this) {
+            running = false;
+        }
+        next();
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 依赖图中的节点
+     */
+    private static final class Node {
+        private final AbstractFileReloadable fileReloadable;
+        /** 变化的文件, 为空则仅由依赖触发 */
+        private final Set<Path> paths;
+        /** 同一批次中依赖本节点的节点 */
+        private final List<Node> dependents = new ArrayList<>();
+        /** 同一批次中未完成的依赖数 */
+        private final AtomicInteger remaining = new AtomicInteger();
+        /** 是否有依赖热加载失败 */
+        private volatile boolean skip;
+
+        Node(AbstractFileReloadable fileReloadable, Set<Path> paths) {
+            this.fileReloadable = fileReloadable;
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * 一个批次
+     */
+    static final class Batch {
+        private final FileReloadGraph graph;
+        /** key -> reloadable, value -> 暂存的新数据 */
+        private final Map<AbstractSnapshotFileReloadable<?>, Object> staged = new ConcurrentHashMap<>();
+        /** 所有节点 */
+        private final Collection<Node> nodes;
+        /** 未完成的节点数 */
+        private final AtomicInteger unfinished;
+        /** 是否有节点热加载失败 */
+        private volatile boolean failed;
+        private final long startTime = System.currentTimeMillis();
+
+        private Batch(FileReloadGraph graph, Map<AbstractFileReloadable, Set<Path>> changed) {
+            this.graph = graph;
+            //加上直接或间接依赖变化的reloadable
+            Map<AbstractFileReloadable, Node> nodeMap = new IdentityHashMap<>();
+            Deque<AbstractFileReloadable> queue = new ArrayDeque<>(changed.keySet());
+            while (!queue.isEmpty()) {
+                AbstractFileReloadable fileReloadable = queue.poll();
+                if (nodeMap.containsKey(fileReloadable)) {
+                    continue;
+                }
+                nodeMap.put(fileReloadable, new Node(fileReloadable, changed.getOrDefault(fileReloadable, Collections.emptySet())));
+                queue.addAll(fileReloadable.getDependents());
+            }
+
+            //仅考虑同一批次内的依赖, 其余依赖视为已完成
+            for (Node node : nodeMap.values()) {
+                for (AbstractFileReloadable input : node.fileReloadable.getDependencies()) {
+                    Node inputNode = nodeMap.get(input);
+                    if (Objects.nonNull(inputNode)) {
+                        inputNode.dependents.add(node);
+                        node.remaining.incrementAndGet();
+                    }
+                }
+            }
+            this.nodes = nodeMap.values();
+            this.unfinished = new AtomicInteger(nodes.size());
+        }
+
+        /**
+         * @return 当前线程正在执行的批次, 没有则返回null
+         */
+        static Batch current() {
+            return CURRENT.get();
+        }
+
+        /**
+         * 暂存新数据
+         */
+        <T> void stage(AbstractSnapshotFileReloadable<T> fileReloadable, T value) {
+            staged.put(fileReloadable, value);
+        }
+
+        /**
+         * @return 暂存的新数据, 没有则返回null
+         */
+        @SuppressWarnings("unchecked")
+        <T> T staged(AbstractSnapshotFileReloadable<T> fileReloadable) {
+            return (T) staged.get(fileReloadable);
+        }
+
+        /**
+         * 执行所有没有依赖的节点
+         */
+        private void start() {
+            log.info("reload graph batch start, {} reloadables", nodes.size());
+            //先收集, 以免执行过程中修改了节点的依赖计数
+            List<Node> roots = new ArrayList<>();
+            for (Node node : nodes) {
+                if (node.remaining.get() == 0) {
+                    roots.add(node);
+                }
+            }
+            roots.forEach(this::execute);
+        }
+
+        private void execute(Node node) {
+            try {
+                graph.executor.execute(() -> run(node));
+            } catch (RejectedExecutionException e) {
+                log.warn("{} reload is rejected", node.fileReloadable.getClass().getName());
+                HotswapStatistics.instance().recordFailure(HotswapPhase.FILE_RELOAD, node.fileReloadable.getFilePath(), e);
+                complete(node, false);
+            }
+        }
+
+        private void run(Node node) {
+            AbstractFileReloadable fileReloadable = node.fileReloadable;
+            boolean success = true;
+            CURRENT.set(this);
+            try {
+                if (!node.paths.isEmpty()) {
+                    for (Path path : node.paths) {
+                        fileReloadable.reloadFile(path, true);
+                    }
+                } else if (!fileReloadable.isDirectory()) {
+                    fileReloadable.reloadFile(FileWatchRegistry.normalize(Paths.get(fileReloadable.getFilePath())));
+                } else {
+                    log.warn("{} is triggered by dependencies, but no changed file in directory '{}', skip",
+                            fileReloadable.getClass().getName(), fileReloadable.getFilePath());
+                }
+            } catch (Exception e) {
+                success = false;
+                log.error(String.format("%s reload encounter error", fileReloadable.getClass().getName()), e);
+                HotswapStatistics.instance().recordFailure(HotswapPhase.FILE_RELOAD, fileReloadable.getFilePath(), e);
+            } finally {
+                CURRENT.remove();
+            }
+            complete(node, success);
+        }
+
+        /**
+         * 节点完成, 依赖全部完成的节点可以开始执行, 依赖失败则跳过
+         */
+        private void complete(Node node, boolean success) {
+            if (!success) {
+                failed = true;
+            }
+            for (Node dependent : node.dependents) {
+                if (!success) {
+                    dependent.skip = true;
+                }
+                if (dependent.remaining.decrementAndGet() == 0) {
+                    if (dependent.skip) {
+                        log.warn("{} reload is skipped, since its dependencies reload fail", dependent.fileReloadable.getClass().getName());
+                        complete(dependent, false);
+                    } else {
+                        execute(dependent);
+                    }
+                }
+            }
+            if (unfinished.decrementAndGet() == 0) {
+                publish();
+                graph.finish();
+            }
+        }
+
+        /**
+         * 整批成功, 则一起发布暂存的新数据
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void publish() {
+            long cost = System.currentTimeMillis() - startTime;
+            if (failed) {
+                log.error("reload graph batch fail, {} reloadables, discard {} staged snapshots, cost {} ms", nodes.size(), staged.size(), cost);
+                //暂存的新数据已丢弃, 文件指纹也不能保留, 否则内容不变的文件下次变化时会被跳过, 永远不会发布
+                for (Node node : nodes) {
+                    node.fileReloadable.clearFingerprints();
+                }
+                return;
+            }
+            if (staged.isEmpty()) {
+                log.info("reload graph batch finished, {} reloadables, cost {} ms", nodes.size(), cost);
+                return;
+            }
+
+            Map<AbstractSnapshotFileReloadable<?>, AbstractSnapshotFileReloadable.Snapshot<?>> published = new IdentityHashMap<>(staged.size());
+            for (Map.Entry<AbstractSnapshotFileReloadable<?>, Object> entry : staged.entrySet()) {
+                AbstractSnapshotFileReloadable fileReloadable = entry.getKey();
+                published.put(fileReloadable, fileReloadable.publishSnapshot(entry.getValue()));
+            }
+            ReloadGeneration generation = ReloadGeneration.advance(published);
+            log.info("reload graph batch finished, {} reloadables, generation {}, cost {} ms", nodes.size(), generation.getId(), cost);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 文件热加载通道
+ * <p>
+ * 每个(文件, {@link AbstractFileReloadable})对应一个通道, 同一通道同时最多只有一个热加载在执行
+ * 执行期间文件再次变化, 仅标记待执行, 当前热加载结束后再执行一次, 读取的是最新的文件内容, 中间的版本直接丢弃
+ * 以避免旧版本解析得慢反而覆盖新版本数据, 也减少无谓的解析
+ *
+ * @author huangjianqin
+ * @date 2022/3/11
+ */
+final class FileReloadLanes {
+    private static final Logger log = LoggerFactory.getLogger(FileReloadLanes.class);
+    /** 文件热加载期间文件再次变化, 是否中断正在执行的热加载 */
+    private static final boolean CANCEL_SUPERSEDED = Boolean.parseBoolean(SysUtils.getSysProperty("kin.hotswap.reload.cancelSuperseded", "false"));
+
+    /** 执行文件热加载的线程池 */
+    private final Executor executor;
+    /** key -> 文件绝对路径 */
+    private final Map<Path, Map<AbstractFileReloadable, Lane>> lanes = new ConcurrentHashMap<>();
+    /** 正在执行热加载的通道数 */
+    private final AtomicInteger runningCount = new AtomicInteger();
+    /** 等待执行热加载的通道数 */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    /** 被新版本取代而丢弃的热加载次数 */
+    private final LongAdder droppedCount = new LongAdder();
+    /** 线程池满而被拒绝的热加载次数 */
+    private final LongAdder rejectedCount = new LongAdder();
+
+    FileReloadLanes(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 提交文件热加载
+     */
+    void submit(Path path, AbstractFileReloadable fileReloadable) {
+        lanes.computeIfAbsent(path, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fileReloadable, k -> new Lane(path, fileReloadable))
+                .submit();
+    }
+
+    /**
+     * 中断{@code path}正在执行的热加载
+     *
+     * @return 是否有正在执行的热加载被中断
+     */
+    boolean cancel(Path path) {
+        Map<AbstractFileReloadable, Lane> fileLanes = lanes.get(path);
+        if (Objects.isNull(fileLanes)) {
+            return false;
+        }
+        boolean cancelled = false;
+        for (Lane lane : fileLanes.values()) {
+            cancelled |= lane.cancel();
+        }
+        return cancelled;
+    }
+
+    /**
+     * 移除{@code fileReloadable}的所有通道, 正在执行的热加载不受影响
+     */
+    void remove(AbstractFileReloadable fileReloadable) {
+        lanes.values().forEach(fileLanes -> fileLanes.remove(fileReloadable));
+        lanes.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * @return 正在执行以及等待执行热加载的通道数
+     */
+    int queueDepth() {
+        return runningCount.get() + pendingCount.get();
+    }
+
+    /**
+     * @return 被新版本取代而丢弃的热加载次数
+     */
+    long droppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return 线程池满而被拒绝的热加载次数
+     */
+    long rejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 单个(文件, {@link AbstractFileReloadable})的热加载通道
+     */
+    private final class Lane {
+        private final Path path;
+        private final AbstractFileReloadable fileReloadable;
+        /** 是否正在执行热加载 */
+        private boolean running;
+        /** 执行期间文件是否再次变化 */
+        private boolean pending;
+        /** 正在执行热加载的线程, 用于中断 */
+        private Thread runner;
+
+        Lane(Path path, AbstractFileReloadable fileReloadable) {
+            this.path = path;
+            this.fileReloadable = fileReloadable;
+        }
+
+        void submit() {
+            synchronized (this) {
+                if (running) {
+                    if (pending) {
+                        //已有待执行的热加载, 其执行时会读取最新文件内容, 本次直接丢弃
+                        droppedCount.increment();
+                    } else {
+                        pending = true;
+                        pendingCount.incrementAndGet();
+                    }
+                    if (CANCEL_SUPERSEDED) {
+                        cancel();
+                    }
+                    return;
+                }
+                running = true;
+                runningCount.incrementAndGet();
+            }
+            //不持有锁提交, 线程池满时可能在当前线程执行热加载
+            execute();
+        }
+
+        /**
+         * 中断正在执行的热加载
+         */
+        synchronized boolean cancel() {
+            if (Objects.isNull(runner)) {
+                return false;
+            }
+            runner.interrupt();
+            return true;
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this::run);
+            } catch (RejectedExecutionException e) {
+                //shutdown或者线程池满, 文件再次变化才会再热加载
+                synchronized (this) {
+                    running = false;
+                }
+                runningCount.decrementAndGet();
+                rejectedCount.increment();
+                log.warn("file '{}' reload is rejected", path);
+                HotswapStatistics.instance().recordFailure(HotswapPhase.FILE_RELOAD, path.toString(), e);
+            }
+        }
+
+        /**
+         * 执行期间文件再次变化, 则在当前线程循环再执行一次, 不会重新提交到线程池, 也不会在持有锁时执行热加载
+         */
+        private void run() {
+            while (true) {
+                synchronized (this) {
+                    runner = Thread.currentThread();
+                }
+                try {
+                    fileReloadable.onFileChanged(path);
+                } catch (ClosedByInterruptException e) {
+                    log.info("file '{}' reload is cancelled", path);
+                } catch (Exception e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        log.info("file '{}' reload is cancelled", path);
+                    } else {
+                        log.error(String.format("file '%s' reload encounter error", path), e);
+                        HotswapStatistics.instance().recordFailure(HotswapPhase.FILE_RELOAD, path.toString(), e);
+                    }
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                        //仅在持有锁且runner非null时才会中断, 此处清除中断标识, 不影响线程池后续任务
+                        Thread.interrupted();
+                    }
+                }
+
+                synchronized (this) {
+                    if (!pending) {
+                        running = false;
+                        runningCount.decrementAndGet();
+                        return;
+                    }
+                    //执行期间文件再次变化, 再执行一次
+                    pending = false;
+                    pendingCount.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.kin.framework.hotswap;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 文件监听注册表
+ * <p>
+ * 目录 -> (文件名 -> {@link AbstractFileReloadable}列表), 每个目录仅向{@link FileChangeDetector}注册一次
+ * 文件变化事件分发时, 先根据目录找到{@link WatchedDirectory}, 再根据文件名找到{@link AbstractFileReloadable}, 与监听的文件数量无关
+ * 同时支持glob匹配以及监听整个目录树
+ *
+ * @author huangjianqin
+ * @date 2022/3/9
+ */
+final class FileWatchRegistry {
+    /** 文件变化检测策略 */
+    private final FileChangeDetector detector;
+    /** key -> 监听目录绝对路径 */
+    private final Map<Path, WatchedDirectory> directories = new ConcurrentHashMap<>();
+
+    FileWatchRegistry(FileChangeDetector detector) {
+        this.detector = detector;
+    }
+
+    /**
+     * 标准化路径, 以保证同一目录的key一致
+     */
+    static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * 监听单个文件
+     */
+    synchronized void register(Path file, AbstractFileReloadable fileReloadable) throws IOException {
+        file = normalize(file);
+        WatchedDirectory directory = watch(file.getParent());
+        List<AbstractFileReloadable> reloadables = directory.fileName2Reloadables.computeIfAbsent(file.getFileName().toString(), k -> new CopyOnWriteArrayList<>());
+        if (reloadables.contains(fileReloadable)) {
+            throw new IllegalStateException(String.format("file '%s' has been monitored by '%s'", file, fileReloadable));
+        }
+        reloadables.add(fileReloadable);
+    }
+
+    /**
+     * 监听目录下匹配glob的文件
+     *
+     * @param dir       目录
+     * @param glob      glob, 匹配相对于{@code dir}的路径, 比如*.json, **&#47;*.xml
+     * @param recursive 是否监听整个目录树
+     */
+    synchronized void register(Path dir, String glob, boolean recursive, AbstractFileReloadable fileReloadable) throws IOException {
+        Path root = normalize(dir);
+        if (!Files.isDirectory(root)) {
+            throw new IllegalStateException(String.format("'%s' is not a directory", root));
+        }
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+        PatternEntry patternEntry = new PatternEntry(root, matcher, recursive, fileReloadable);
+        if (recursive) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                    watch(subDir).patterns.add(patternEntry);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } else {
+            watch(root).patterns.add(patternEntry);
+        }
+    }
+
+    /**
+     * 目录下新建了子目录, 如果该目录属于递归监听的目录树, 则监听新建的子目录
+     */
+    synchronized void onDirectoryCreated(Path subDir) throws IOException {
+        subDir = normalize(subDir);
+        WatchedDirectory parent = directories.get(subDir.getParent());
+        if (Objects.isNull(parent)) {
+            return;
+        }
+        for (PatternEntry patternEntry : parent.patterns) {
+            if (patternEntry.recursive) {
+                watch(subDir).patterns.addIfAbsent(patternEntry);
+            }
+        }
+    }
+
+    /**
+     * 取消{@code fileReloadable}对{@code file}的监听
+     */
+    synchronized void unregister(Path file, AbstractFileReloadable fileReloadable) {
+        file = normalize(file);
+        WatchedDirectory directory = directories.get(file.getParent());
+        if (Objects.isNull(directory)) {
+            return;
+        }
+        String fileName = file.getFileName().toString();
+        List<AbstractFileReloadable> reloadables = directory.fileName2Reloadables.get(fileName);
+        if (Objects.nonNull(reloadables)) {
+            reloadables.remove(fileReloadable);
+            if (reloadables.isEmpty()) {
+                directory.fileName2Reloadables.remove(fileName);
+            }
+        }
+        unwatchIfEmpty(directory);
+    }
+
+    /**
+     * 取消{@code fileReloadable}所有的监听, 包括单个文件, glob以及目录树
+     */
+    synchronized void unregister(AbstractFileReloadable fileReloadable) {
+        for (WatchedDirectory directory : new ArrayList<>(directories.values())) {
+            Iterator<Map.Entry<String, List<AbstractFileReloadable>>> iterator = directory.fileName2Reloadables.entrySet().iterator();
+            while (iterator.hasNext()) {
+                List<AbstractFileReloadable> reloadables = iterator.next().getValue();
+                reloadables.remove(fileReloadable);
+                if (reloadables.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            directory.patterns.removeIf(patternEntry -> patternEntry.fileReloadable == fileReloadable);
+            unwatchIfEmpty(directory);
+        }
+    }
+
+    /**
+     * 查找监听了{@code dir}目录下{@code fileName}文件的{@link AbstractFileReloadable}
+     *
+     * @param dir      标准化后的目录路径
+     * @param fileName 文件名
+     */
+    List<AbstractFileReloadable> match(Path dir, String fileName) {
+        WatchedDirectory directory = directories.get(dir);
+        if (Objects.isNull(directory)) {
+            return Collections.emptyList();
+        }
+
+        List<AbstractFileReloadable> reloadables = directory.fileName2Reloadables.get(fileName);
+        if (directory.patterns.isEmpty()) {
+            return Objects.nonNull(reloadables) ? reloadables : Collections.emptyList();
+        }
+
+        List<AbstractFileReloadable> matched = new ArrayList<>();
+        if (Objects.nonNull(reloadables)) {
+            matched.addAll(reloadables);
+        }
+        Path file = dir.resolve(fileName);
+        for (PatternEntry patternEntry : directory.patterns) {
+            if (patternEntry.matcher.matches(patternEntry.root.relativize(file)) && !matched.contains(patternEntry.fileReloadable)) {
+                matched.add(patternEntry.fileReloadable);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 监听目录, 每个目录仅注册一次
+     */
+    private WatchedDirectory watch(Path dir) throws IOException {
+        WatchedDirectory directory = directories.get(dir);
+        if (Objects.nonNull(directory)) {
+            return directory;
+        }
+        detector.watch(dir);
+        directory = new WatchedDirectory(dir);
+        directories.put(dir, directory);
+        return directory;
+    }
+
+    /**
+     * 目录下已没有监听的文件, 则取消监听该目录
+     */
+    private void unwatchIfEmpty(WatchedDirectory directory) {
+        if (!directory.fileName2Reloadables.isEmpty() || !directory.patterns.isEmpty()) {
+            return;
+        }
+        detector.unwatch(directory.dir);
+        directories.remove(directory.dir);
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 监听的目录
+     */
+    private static final class WatchedDirectory {
+        /** 目录绝对路径 */
+        private final Path dir;
+        /** key -> 文件名 */
+        private final Map<String, List<AbstractFileReloadable>> fileName2Reloadables = new ConcurrentHashMap<>();
+        /** glob匹配以及目录树监听 */
+        private final CopyOnWriteArrayList<PatternEntry> patterns = new CopyOnWriteArrayList<>();
+
+        WatchedDirectory(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * glob匹配以及目录树监听
+     */
+    private static final class PatternEntry {
+        /** 监听的根目录 */
+        private final Path root;
+        /** 匹配相对于{@link #root}的路径 */
+        private final PathMatcher matcher;
+        /** 是否监听整个目录树 */
+        private final boolean recursive;
+        private final AbstractFileReloadable fileReloadable;
+
+        PatternEntry(Path root, PathMatcher matcher, boolean recursive, AbstractFileReloadable fileReloadable) {
+            this.root = root;
+            this.matcher = matcher;
+            this.recursive = recursive;
+            this.fileReloadable = fileReloadable;
+        }
+    }
+}
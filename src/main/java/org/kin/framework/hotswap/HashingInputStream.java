@@ -0,0 +1,112 @@
+package org.kin.framework.hotswap;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 读取的同时流式计算内容hash, 用于{@link FileReadMode#STREAM}方式读取时计算文件内容指纹, 无需额外读取一次文件
+ * 不支持mark/reset, skip的内容同样会读取并参与hash
+ * 解析方可能在读取完成前关闭流, 因此{@link #close()}会先读取剩余内容, 且不会关闭底层流, 由创建方负责关闭
+ *
+ * @author huangjianqin
+ * @date 2022/3/16
+ */
+class HashingInputStream extends FilterInputStream {
+    private final XxHash64.Streaming hasher = new XxHash64.Streaming();
+    /** 是否已读取完所有内容 */
+    private boolean drained;
+
+    HashingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (drained) {
+            return -1;
+        }
+        int b = in.read();
+        if (b >= 0) {
+            hasher.update(b);
+        } else {
+            drained = true;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (drained) {
+            return -1;
+        }
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            hasher.update(b, off, n);
+        } else if (n < 0) {
+            drained = true;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(Math.max(n, 0), 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int len = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (len < 0) {
+                break;
+            }
+            skipped += len;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        //不支持
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+    }
+
+    /**
+     * 读取剩余内容, 以计算完整内容的hash
+     */
+    void drain() throws IOException {
+        if (drained) {
+            return;
+        }
+        byte[] buffer = new byte[8192];
+        while (read(buffer, 0, buffer.length) >= 0) {
+            //仅参与hash
+        }
+    }
+
+    /**
+     * @return 已读取内容的hash
+     */
+    long getHash() {
+        return hasher.getValue();
+    }
+
+    /**
+     * @return 已读取内容的长度
+     */
+    long getCount() {
+        return hasher.getLength();
+    }
+}
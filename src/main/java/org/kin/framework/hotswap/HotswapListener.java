@@ -1,5 +1,6 @@
 package org.kin.framework.hotswap;
 
+import org.kin.framework.hotswap.jclass.HotswapResult;
 import org.kin.framework.utils.SPI;
 
 /**
@@ -13,4 +14,15 @@ public interface HotswapListener {
      * 热更新完成后触发, 暴露接口给开发者自定义逻辑
      */
     void afterHotswap();
+
+    /**
+     * 热更新完成后触发, 暴露接口给开发者自定义逻辑
+     * 开发者可以根据redefine的类以及加载的新类, 仅清理受影响的缓存
+     * 默认调用{@link #afterHotswap()}
+     *
+     * @param result 热更新结果
+     */
+    default void afterHotswap(HotswapResult result) {
+        afterHotswap();
+    }
 }
@@ -0,0 +1,86 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.jclass.HotswapResult;
+import org.kin.framework.utils.CollectionUtils;
+import org.kin.framework.utils.ExtensionLoader;
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 类热更新成功后, 触发{@link HotswapListener}
+ * <p>
+ * 所有热更新共享一个调度线程, 延迟{@link #DELAY_MS}后并行执行所有{@link HotswapListener}
+ * 单个{@link HotswapListener}执行超过{@link #TIMEOUT_MS}则中断
+ *
+ * @author huangjianqin
+ * @date 2022/3/8
+ */
+final class HotswapListenerDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(HotswapListenerDispatcher.class);
+    /** 热更新成功后, 延迟多久(ms)触发{@link HotswapListener}, 可以为0 */
+    private static final long DELAY_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.listener.delay", "5000"));
+    /** 单个{@link HotswapListener}执行超时(ms) */
+    private static final long TIMEOUT_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.listener.timeout", "30000"));
+
+    /** 热更新listeners */
+    private final List<HotswapListener> listeners = ExtensionLoader.getExtensions(HotswapListener.class);
+    /** 延迟触发以及超时检查调度线程 */
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hotswapListenerScheduler"));
+    /** 执行{@link HotswapListener}的线程 */
+    private final ExecutorService executor = Executors.newCachedThreadPool(new NamedThreadFactory("hotswapListener"));
+
+    /**
+     * 延迟触发{@link HotswapListener}
+     *
+     * @param result 热更新结果
+     */
+    void dispatch(HotswapResult result) {
+        if (CollectionUtils.isEmpty(listeners)) {
+            return;
+        }
+        scheduler.schedule(() -> dispatch0(result), DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 并行执行{@link HotswapListener}, 并调度超时检查
+     */
+    private void dispatch0(HotswapResult result) {
+        for (HotswapListener listener : listeners) {
+            String listenerName = listener.getClass().getName();
+            Future<?> future = executor.submit(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    listener.afterHotswap(result);
+                    HotswapStatistics.instance().record(HotswapPhase.LISTENER, listenerName, System.nanoTime() - startTime);
+                } catch (Exception e) {
+                    log.error(String.format("encounter error, when trigger HotswapListener '%s'", listenerName), e);
+                    HotswapStatistics.instance().recordFailure(HotswapPhase.LISTENER, listenerName, e);
+                } finally {
+                    log.info("HotswapListener '{}' finished, time cost {} ms", listenerName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+                }
+            });
+            scheduler.schedule(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                future.cancel(true);
+                log.warn("HotswapListener '{}' is interrupted, due to timeout {} ms", listenerName, TIMEOUT_MS);
+                HotswapStatistics.instance().recordFailure(HotswapPhase.LISTENER, listenerName,
+                        new TimeoutException(String.format("timeout %d ms", TIMEOUT_MS)));
+            }, TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * shutdown
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+}
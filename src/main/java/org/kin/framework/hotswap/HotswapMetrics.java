@@ -0,0 +1,35 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SPI;
+
+/**
+ * 热更新指标扩展接口, 可以将各阶段耗时以及失败上报到自定义的监控系统
+ * 通过{@link org.kin.framework.utils.ExtensionLoader}加载, 与内置统计{@link HotswapStatistics}同时生效
+ * <p>
+ * 实现需线程安全, 且不能阻塞, 因为会在热更新线程同步调用
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+@SPI(alias = "hotswapMetrics")
+public interface HotswapMetrics {
+    /**
+     * 记录阶段耗时
+     *
+     * @param phase     阶段
+     * @param subject   对象, 比如class文件路径, 文件路径, {@link HotswapListener}类名, 可能为null
+     * @param costNanos 耗时(ns)
+     */
+    void record(HotswapPhase phase, String subject, long costNanos);
+
+    /**
+     * 记录阶段失败
+     *
+     * @param phase   阶段
+     * @param subject 对象, 可能为null
+     * @param cause   失败原因
+     */
+    default void recordFailure(HotswapPhase phase, String subject, Throwable cause) {
+        //default do nothing
+    }
+}
@@ -0,0 +1,30 @@
+package org.kin.framework.hotswap;
+
+/**
+ * 类热更新以及文件热加载的各个阶段, 用于统计耗时以及失败
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+public enum HotswapPhase {
+    /** 第一个文件变化事件到批量触发的延迟, 包括静默期 */
+    EVENT_DISPATCH,
+    /** 读取单个class文件 */
+    READ,
+    /** 解析以及校验单个class文件 */
+    PARSE,
+    /** 单个class文件与已加载类的结构兼容性预检 */
+    PREFLIGHT,
+    /** 获取{@link java.lang.instrument.Instrumentation}, 仅首次热更新需attach */
+    ATTACH,
+    /** {@link java.lang.instrument.Instrumentation#redefineClasses}, 期间业务线程可能被暂停 */
+    REDEFINE,
+    /** 加载新类 */
+    DEFINE,
+    /** 执行单个{@link org.kin.framework.hotswap.jclass.WarmupTask} */
+    WARMUP,
+    /** 执行单个{@link HotswapListener} */
+    LISTENER,
+    /** 单个文件热加载 */
+    FILE_RELOAD,
+}
@@ -0,0 +1,143 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.ExtensionLoader;
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热更新内置统计
+ * <p>
+ * 每个{@link HotswapPhase}一个{@link LatencyHistogram}以及失败计数, 并保留最近{@link #MAX_FAILURES}次失败详情
+ * 同时转发给所有{@link HotswapMetrics}扩展
+ * 通过{@link org.kin.framework.hotswap.jclass.ClassHotswapMBean}暴露给JMX
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+public final class HotswapStatistics {
+    private static final Logger log = LoggerFactory.getLogger(HotswapStatistics.class);
+    /** 保留最近多少次失败详情 */
+    private static final int MAX_FAILURES = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.metrics.maxFailures", "32"));
+    /** 单例 */
+    private static final HotswapStatistics INSTANCE = new HotswapStatistics();
+
+    public static HotswapStatistics instance() {
+        return INSTANCE;
+    }
+
+    /** index -> {@link HotswapPhase#ordinal()} */
+    private final LatencyHistogram[] histograms = new LatencyHistogram[HotswapPhase.values().length];
+    /** index -> {@link HotswapPhase#ordinal()} */
+    private final LongAdder[] failureCounts = new LongAdder[HotswapPhase.values().length];
+    /** 最近的失败详情, 环形数组 */
+    private final AtomicReferenceArray<String> failures = new AtomicReferenceArray<>(Math.max(MAX_FAILURES, 1));
+    /** 失败详情写入序号 */
+    private final AtomicLong failureSeq = new AtomicLong();
+    /** 扩展 */
+    private final List<HotswapMetrics> metricsList = ExtensionLoader.getExtensions(HotswapMetrics.class);
+
+    private HotswapStatistics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+            failureCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录阶段耗时
+     *
+     * @param phase     阶段
+     * @param subject   对象, 可能为null
+     * @param costNanos 耗时(ns)
+     */
+    public void record(HotswapPhase phase, String subject, long costNanos) {
+        histograms[phase.ordinal()].record(costNanos);
+        for (HotswapMetrics metrics : metricsList) {
+            try {
+                metrics.record(phase, subject, costNanos);
+            } catch (Exception e) {
+                log.error(String.format("HotswapMetrics '%s' record encounter error", metrics.getClass().getName()), e);
+            }
+        }
+    }
+
+    /**
+     * 记录阶段失败
+     *
+     * @param phase   阶段
+     * @param subject 对象, 可能为null
+     * @param cause   失败原因
+     */
+    public void recordFailure(HotswapPhase phase, String subject, Throwable cause) {
+        failureCounts[phase.ordinal()].increment();
+        String failure = String.format("%s %s '%s' %s",
+                new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()), phase, subject, cause);
+        failures.set((int) (failureSeq.getAndIncrement() % failures.length()), failure);
+        for (HotswapMetrics metrics : metricsList) {
+            try {
+                metrics.recordFailure(phase, subject, cause);
+            } catch (Exception e) {
+                log.error(String.format("HotswapMetrics '%s' record failure encounter error", metrics.getClass().getName()), e);
+            }
+        }
+    }
+
+    /**
+     * @return 各阶段统计快照, key -> 阶段名
+     */
+    public Map<String, PhaseStats> getPhaseStats() {
+        Map<String, PhaseStats> phaseStats = new LinkedHashMap<>();
+        for (HotswapPhase phase : HotswapPhase.values()) {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+            long count = histogram.count();
+            phaseStats.put(phase.name(), new PhaseStats(phase.name(), count, failureCounts[phase.ordinal()].sum(),
+                    count > 0 ? toMs(histogram.sum()) / count : 0,
+                    toMs(histogram.percentile(0.5)),
+                    toMs(histogram.percentile(0.99)),
+                    toMs(histogram.percentile(0.999)),
+                    toMs(histogram.max())));
+        }
+        return phaseStats;
+    }
+
+    /**
+     * @return 最近的失败详情, 按时间先后排序
+     */
+    public List<String> getRecentFailures() {
+        long seq = failureSeq.get();
+        int length = failures.length();
+        List<String> recentFailures = new ArrayList<>(length);
+        for (long i = Math.max(seq - length, 0); i < seq; i++) {
+            String failure = failures.get((int) (i % length));
+            if (Objects.nonNull(failure)) {
+                recentFailures.add(failure);
+            }
+        }
+        return recentFailures;
+    }
+
+    /**
+     * 重置内置统计, 不影响{@link HotswapMetrics}扩展
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+            failureCounts[i].reset();
+        }
+    }
+
+    /**
+     * ns转换成ms
+     */
+    private static double toMs(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
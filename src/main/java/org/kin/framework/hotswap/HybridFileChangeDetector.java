@@ -0,0 +1,80 @@
+package org.kin.framework.hotswap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 混合文件变化检测策略
+ * <p>
+ * 基于{@link WatchServiceFileChangeDetector}及时感知文件变化, 同时定时基于{@link PollingFileChangeDetector}全量扫描校对, 补偿丢失的事件
+ * 收到事件时会刷新对应文件的快照, 故校对时不会重复触发已感知的变化
+ * 事件溢出(OVERFLOW)时, 则立即扫描该目录
+ *
+ * @author huangjianqin
+ * @date 2022/3/10
+ */
+final class HybridFileChangeDetector implements FileChangeDetector {
+    private static final Logger log = LoggerFactory.getLogger(HybridFileChangeDetector.class);
+
+    /** 基于文件系统事件 */
+    private final WatchServiceFileChangeDetector watchDetector;
+    /** 定时全量扫描校对 */
+    private final PollingFileChangeDetector pollingDetector;
+
+    HybridFileChangeDetector(long reconcileIntervalMs) throws IOException {
+        watchDetector = new WatchServiceFileChangeDetector();
+        pollingDetector = new PollingFileChangeDetector(reconcileIntervalMs);
+    }
+
+    @Override
+    public void watch(Path dir) throws IOException {
+        watchDetector.watch(dir);
+        pollingDetector.watch(dir);
+    }
+
+    @Override
+    public void unwatch(Path dir) {
+        watchDetector.unwatch(dir);
+        pollingDetector.unwatch(dir);
+    }
+
+    @Override
+    public List<FileChange> poll(long timeoutMs) throws InterruptedException {
+        long waitMs = pollingDetector.nextScanTime() - System.currentTimeMillis();
+        if (waitMs <= 0) {
+            //校对
+            List<FileChange> changes = pollingDetector.scanAll();
+            if (!changes.isEmpty()) {
+                log.info("reconcile scan found {} missed file changes", changes.size());
+            }
+            return changes;
+        }
+        if (timeoutMs >= 0) {
+            waitMs = Math.min(waitMs, timeoutMs);
+        }
+
+        List<FileChange> events = watchDetector.poll(waitMs);
+        List<FileChange> changes = new ArrayList<>(events.size());
+        for (FileChange event : events) {
+            if (event.getKind() == Kind.OVERFLOW) {
+                //事件丢失, 立即扫描该目录
+                pollingDetector.scanDir(event.getPath(), changes);
+            } else {
+                pollingDetector.refresh(event.getPath());
+                changes.add(event);
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public void close() {
+        watchDetector.close();
+        pollingDetector.close();
+    }
+}
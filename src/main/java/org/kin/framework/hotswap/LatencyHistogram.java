@@ -0,0 +1,101 @@
+package org.kin.framework.hotswap;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 低开销的耗时直方图
+ * <p>
+ * 按耗时(ns)的2的n次方分桶, 每个桶一个{@link LongAdder}, 记录时无锁, 仅一次累加
+ * 分位数取所在桶的上界, 误差在2倍以内, 足够用于发现长时间暂停
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+final class LatencyHistogram {
+    /** index -> 耗时(ns)的二进制位数, 即耗时落在[2^(index-1), 2^index) */
+    private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+    /** 总耗时(ns) */
+    private final LongAdder sum = new LongAdder();
+    /** 最大耗时(ns) */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录耗时
+     */
+    void record(long costNanos) {
+        costNanos = Math.max(costNanos, 0);
+        buckets[Math.min(Long.SIZE - Long.numberOfLeadingZeros(costNanos), buckets.length - 1)].increment();
+        sum.add(costNanos);
+        max.accumulate(costNanos);
+    }
+
+    /**
+     * @return 记录次数
+     */
+    long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return 总耗时(ns)
+     */
+    long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return 最大耗时(ns)
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile 分位, (0, 1]
+     * @return 分位数所在桶的上界(ns), 不超过最大耗时
+     */
+    long percentile(double quantile) {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * count);
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                long upper = i == 0 ? 0 : (i >= Long.SIZE - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * 重置
+     */
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sum.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,35 @@
+package org.kin.framework.hotswap;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带线程名前缀的{@link ThreadFactory}, 仅用于热更新框架内部的daemon线程
+ *
+ * @author huangjianqin
+ * @date 2022/3/8
+ */
+final class NamedThreadFactory implements ThreadFactory {
+    /** 线程名前缀 */
+    private final String prefix;
+    /** 是否daemon线程 */
+    private final boolean daemon;
+    /** 线程计数 */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+        this(prefix, true);
+    }
+
+    NamedThreadFactory(String prefix, boolean daemon) {
+        this.prefix = prefix;
+        this.daemon = daemon;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, prefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(daemon);
+        return thread;
+    }
+}
@@ -0,0 +1,327 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.hotswap.jclass.HotswapResult;
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类热更新补丁收件箱
+ * <p>
+ * 目录结构:
+ * 1. inbox, 即{@link org.kin.framework.hotswap.jclass.ClassHotswap#CLASSPATH}, 投递补丁(.class或者.zip)的目录
+ * 2. processing, 认领后的补丁, 通过原子重命名从inbox移动过来, 同一补丁仅会被认领一次, 认领期间新投递的补丁不受影响
+ * 3. archive, 处理完的补丁, 文件名带上内容指纹, 失败则带上{@value #FAILED_SUFFIX}后缀, 仅保留最近{@link #ARCHIVE_MAX_FILES}个
+ * <p>
+ * 补丁写入完成才会被认领:
+ * 1. 存在同名{@value #MARKER_SUFFIX}标识文件, 比如xxx.zip.ready, 则认为xxx.zip已写完
+ * 2. 否则需文件大小以及修改时间至少{@link #STABLE_MS}内没有变化, 开启{@link #REQUIRE_MARKER}则必须要有标识文件
+ * 3. zip包还需能找到end of central directory, 即使写入方中途停顿超过{@link #STABLE_MS}, 也不会认领写了一半的zip包
+ * 投递方最好先写临时文件(非.class或.zip后缀), 写完再重命名, 则无需等待
+ * <p>
+ * processing以及archive默认与inbox同级, 需与inbox在同一文件系统, 以保证重命名是原子的, 否则启动时直接抛异常
+ * 非线程安全, 除{@link #archive(List, HotswapResult)}外, 仅能在{@link FileMonitor}线程调用
+ *
+ * @author huangjianqin
+ * @date 2022/3/14
+ */
+final class PatchInbox {
+    private static final Logger log = LoggerFactory.getLogger(PatchInbox.class);
+    /** 认领后的补丁存储目录, 默认与inbox同级的processing目录 */
+    private static final String PROCESSING_PATH = SysUtils.getSysProperty("kin.hotswap.processing", "");
+    /** 处理完的补丁归档目录, 默认与inbox同级的archive目录 */
+    private static final String ARCHIVE_PATH = SysUtils.getSysProperty("kin.hotswap.archive", "");
+    /** 最多保留多少个归档补丁 */
+    private static final int ARCHIVE_MAX_FILES = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.archive.maxFiles", "100"));
+    /** 补丁大小以及修改时间至少多久(ms)没有变化, 才认为已写完 */
+    private static final long STABLE_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.inbox.stableMs", "500"));
+    /** 补丁还没写完时, 重新检查的间隔(ms) */
+    private static final long RECHECK_MS = Math.max(STABLE_MS, 100);
+    /** 是否必须存在标识文件才认领补丁 */
+    private static final boolean REQUIRE_MARKER = Boolean.parseBoolean(SysUtils.getSysProperty("kin.hotswap.inbox.requireMarker", "false"));
+    /** 补丁写完的标识文件后缀 */
+    private static final String MARKER_SUFFIX = ".ready";
+    /** 热更新失败的归档补丁后缀 */
+    private static final String FAILED_SUFFIX = ".failed";
+    /** zip end of central directory签名, 即PK\5\6 */
+    private static final int ZIP_EOCD_SIGNATURE = 0x06054B50;
+    /** zip end of central directory最小长度 */
+    private static final int ZIP_EOCD_SIZE = 22;
+
+    /** 投递补丁的目录 */
+    private final Path inboxPath;
+    /** 认领后的补丁存储目录 */
+    private final Path processingPath;
+    /** 处理完的补丁归档目录 */
+    private final Path archivePath;
+    /** 还没认领的补丁, key -> inbox内补丁路径 */
+    private final Map<Path, Pending> pendings = new LinkedHashMap<>();
+    /** 认领序号, 保证同一毫秒内认领的同名补丁不冲突 */
+    private final AtomicLong claimSeq = new AtomicLong();
+
+    PatchInbox(Path inboxPath) throws IOException {
+        this.inboxPath = inboxPath;
+        this.processingPath = resolveDirectory(PROCESSING_PATH, "processing");
+        this.archivePath = resolveDirectory(ARCHIVE_PATH, "archive");
+        Files.createDirectories(processingPath);
+        Files.createDirectories(archivePath);
+        checkSameFileStore(processingPath);
+        checkSameFileStore(archivePath);
+        recover();
+    }
+
+    /**
+     * @param path        配置的目录路径, 没有配置则为空串
+     * @param defaultName 没有配置时, 与inbox同级的目录名
+     * @return 目录路径
+     */
+    private Path resolveDirectory(String path, String defaultName) {
+        if (!path.isEmpty()) {
+            return FileWatchRegistry.normalize(Paths.get(path));
+        }
+        Path parent = inboxPath.getParent();
+        return Objects.nonNull(parent) ? parent.resolve(defaultName) : inboxPath.resolve(defaultName);
+    }
+
+    /**
+     * 检查目录与inbox是否在同一文件系统, 否则无法原子重命名, 补丁永远不会被认领
+     */
+    private void checkSameFileStore(Path path) throws IOException {
+        FileStore inboxStore = Files.getFileStore(inboxPath);
+        FileStore store = Files.getFileStore(path);
+        if (!inboxStore.equals(store)) {
+            throw new IllegalStateException(String.format("hotswap directory '%s'(%s) is not on the same file store as inbox '%s'(%s), " +
+                    "patches can not be claimed by atomic move", path, store, inboxPath, inboxStore));
+        }
+    }
+
+    /**
+     * 上次进程退出时还没处理完的补丁移回inbox, 并与inbox内已有的补丁一起等待认领
+     * 进程重启后, 之前redefine的类已失效, 需重新热更新
+     */
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(processingPath)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String[] splits = name.split("-", 3);
+                Path target = inboxPath.resolve(splits.length == 3 ? splits[2] : name);
+                if (Files.exists(target)) {
+                    //inbox已有更新的同名补丁
+                    Files.delete(path);
+                } else {
+                    Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+                log.info("recover unprocessed patch '{}' to '{}'", path, target);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inboxPath)) {
+            for (Path path : stream) {
+                offer(path);
+            }
+        }
+    }
+
+    /**
+     * inbox内文件变化
+     */
+    void offer(Path path) {
+        String name = path.getFileName().toString();
+        if (name.endsWith(MARKER_SUFFIX)) {
+            //标识文件, 则对应的补丁已写完
+            path = path.resolveSibling(name.substring(0, name.length() - MARKER_SUFFIX.length()));
+            name = path.getFileName().toString();
+        }
+        if (!name.endsWith(".class") && !name.endsWith(".zip")) {
+            //只允许.class和.zip, 其余文件可能是正在写入的临时文件
+            return;
+        }
+        //文件再次变化或者标识文件出现, 则立即重新检查
+        pendings.computeIfAbsent(path, k -> new Pending()).nextCheckTime = 0;
+    }
+
+    /**
+     * @return 距离下次检查补丁是否写完的时间(ms), 没有还没认领的补丁则返回-1
+     */
+    long nextCheckDelay() {
+        if (pendings.isEmpty()) {
+            return -1;
+        }
+        long nextCheckTime = Long.MAX_VALUE;
+        for (Pending pending : pendings.values()) {
+            nextCheckTime = Math.min(nextCheckTime, pending.nextCheckTime);
+        }
+        return Math.max(nextCheckTime - System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * 认领所有已写完的补丁
+     *
+     * @return 认领后的补丁路径, 即processing内的路径
+     */
+    List<Path> claim() {
+        long now = System.currentTimeMillis();
+        List<Path> claimed = new ArrayList<>();
+        Iterator<Map.Entry<Path, Pending>> iterator = pendings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Pending> entry = iterator.next();
+            Path path = entry.getKey();
+            Pending pending = entry.getValue();
+            if (pending.nextCheckTime > now) {
+                continue;
+            }
+
+            Path markerPath = path.resolveSibling(path.getFileName() + MARKER_SUFFIX);
+            boolean marked = Files.exists(markerPath);
+            try {
+                if (!marked) {
+                    if (REQUIRE_MARKER) {
+                        //等待标识文件变化事件
+                        iterator.remove();
+                        continue;
+                    }
+                    long stableTime = pending.check(Files.size(path), Files.getLastModifiedTime(path).toMillis(), now);
+                    boolean stable = now - stableTime >= STABLE_MS;
+                    if (!stable || !isZipComplete(path)) {
+                        //可能还在写入
+                        pending.nextCheckTime = stable ? now + RECHECK_MS : stableTime + STABLE_MS;
+                        continue;
+                    }
+                }
+
+                Path processingFilePath = processingPath.resolve(String.format("%013d-%06d-%s", now, claimSeq.incrementAndGet(), path.getFileName()));
+                Files.move(path, processingFilePath, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(markerPath);
+                claimed.add(processingFilePath);
+                iterator.remove();
+                log.info("claim patch '{}' to '{}'", path, processingFilePath);
+            } catch (NoSuchFileException e) {
+                //已被删除或者被其他进程认领
+                iterator.remove();
+            } catch (AtomicMoveNotSupportedException e) {
+                //重试也不会成功, 比如运行期间挂载了其他文件系统
+                log.error(String.format("claim patch '%s' error, atomic move is not supported, give up", path), e);
+                iterator.remove();
+            } catch (IOException e) {
+                //比如windows下文件还被占用
+                log.warn(String.format("claim patch '%s' error, retry later", path), e);
+                pending.nextCheckTime = now + RECHECK_MS;
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 从文件末尾查找zip end of central directory签名, 找不到则zip包还没写完
+     * 非zip包直接返回true
+     */
+    private static boolean isZipComplete(Path path) throws IOException {
+        if (!path.getFileName().toString().endsWith(".zip")) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            //end of central directory固定22字节, 加上最长65535字节的注释
+            int len = (int) Math.min(size, ZIP_EOCD_SIZE + 0xFFFF);
+            ByteBuffer buffer = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, size - len + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = len - ZIP_EOCD_SIZE; i >= 0; i--) {
+                if (buffer.getInt(i) == ZIP_EOCD_SIGNATURE) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 归档处理完的补丁, 文件名带上内容指纹, 并删除超出保留数量的旧归档
+     * 在热更新线程调用
+     *
+     * @param claimed 认领后的补丁路径
+     * @param result  热更新结果
+     */
+    void archive(List<Path> claimed, HotswapResult result) {
+        for (Path path : claimed) {
+            try {
+                long fingerprint = XxHash64.hash(Files.readAllBytes(path));
+                //processing内的文件名格式是 认领时间-序号-补丁文件名
+                String[] splits = path.getFileName().toString().split("-", 3);
+                String archiveName = String.format("%s-%s-%016x-%s%s", splits[0], splits[1], fingerprint, splits[2],
+                        result.isSuccess() ? "" : FAILED_SUFFIX);
+                Path archiveFilePath = archivePath.resolve(archiveName);
+                Files.move(path, archiveFilePath, StandardCopyOption.ATOMIC_MOVE);
+                log.info("archive patch '{}' to '{}'", path, archiveFilePath);
+            } catch (IOException e) {
+                log.error(String.format("archive patch '%s' error", path), e);
+            }
+        }
+
+        evict();
+    }
+
+    /**
+     * 删除超出保留数量的旧归档, 文件名以认领时间开头, 按文件名排序即按认领时间排序
+     */
+    private void evict() {
+        List<Path> archived = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(archivePath)) {
+            for (Path path : stream) {
+                archived.add(path);
+            }
+        } catch (IOException e) {
+            log.error(String.format("list archive directory '%s' error", archivePath), e);
+            return;
+        }
+        if (archived.size() <= ARCHIVE_MAX_FILES) {
+            return;
+        }
+
+        archived.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        for (Path path : archived.subList(0, archived.size() - ARCHIVE_MAX_FILES)) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.error(String.format("delete archived patch '%s' error", path), e);
+            }
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 还没认领的补丁
+     */
+    private static final class Pending {
+        /** 上次检查时的文件大小, -1则还没检查过 */
+        private long size = -1;
+        /** 上次检查时发现文件大小变化的时间 */
+        private long sizeChangedTime;
+        /** 下次检查时间 */
+        private long nextCheckTime;
+
+        /**
+         * 记录文件大小
+         *
+         * @return 文件最后一次变化的时间
+         */
+        long check(long size, long lastModifyTime, long now) {
+            if (this.size >= 0 && this.size != size) {
+                sizeChangedTime = now;
+            }
+            this.size = size;
+            return Math.max(lastModifyTime, sizeChangedTime);
+        }
+    }
+}
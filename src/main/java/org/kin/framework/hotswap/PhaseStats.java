@@ -0,0 +1,84 @@
+package org.kin.framework.hotswap;
+
+/**
+ * 单个{@link HotswapPhase}的统计快照
+ *
+ * @author huangjianqin
+ * @date 2022/3/12
+ */
+public final class PhaseStats {
+    /** 阶段 */
+    private final String phase;
+    /** 成功次数 */
+    private final long count;
+    /** 失败次数 */
+    private final long failureCount;
+    /** 平均耗时(ms) */
+    private final double meanMs;
+    /** 50分位耗时(ms) */
+    private final double p50Ms;
+    /** 99分位耗时(ms) */
+    private final double p99Ms;
+    /** 99.9分位耗时(ms) */
+    private final double p999Ms;
+    /** 最大耗时(ms) */
+    private final double maxMs;
+
+    PhaseStats(String phase, long count, long failureCount, double meanMs, double p50Ms, double p99Ms, double p999Ms, double maxMs) {
+        this.phase = phase;
+        this.count = count;
+        this.failureCount = failureCount;
+        this.meanMs = meanMs;
+        this.p50Ms = p50Ms;
+        this.p99Ms = p99Ms;
+        this.p999Ms = p999Ms;
+        this.maxMs = maxMs;
+    }
+
+    //getter
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public double getMeanMs() {
+        return meanMs;
+    }
+
+    public double getP50Ms() {
+        return p50Ms;
+    }
+
+    public double getP99Ms() {
+        return p99Ms;
+    }
+
+    public double getP999Ms() {
+        return p999Ms;
+    }
+
+    public double getMaxMs() {
+        return maxMs;
+    }
+
+    @Override
+    public String toString() {
+        return "PhaseStats{" +
+                "phase='" + phase + '\'' +
+                ", count=" + count +
+                ", failureCount=" + failureCount +
+                ", meanMs=" + meanMs +
+                ", p50Ms=" + p50Ms +
+                ", p99Ms=" + p99Ms +
+                ", p999Ms=" + p999Ms +
+                ", maxMs=" + maxMs +
+                '}';
+    }
+}
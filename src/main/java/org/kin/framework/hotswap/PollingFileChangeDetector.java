@@ -0,0 +1,197 @@
+package org.kin.framework.hotswap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于定时扫描的文件变化检测策略
+ * <p>
+ * 每次扫描遍历监听目录, 每个文件仅调用一次{@link Files#readAttributes(Path, Class, java.nio.file.LinkOption...)},
+ * 一次性获取文件大小, 修改时间以及inode(file key), 与上次扫描的快照对比, 不依赖文件系统事件
+ *
+ * @author huangjianqin
+ * @date 2022/3/10
+ */
+final class PollingFileChangeDetector implements FileChangeDetector {
+    private static final Logger log = LoggerFactory.getLogger(PollingFileChangeDetector.class);
+
+    /** 扫描间隔(ms) */
+    private final long intervalMs;
+    /** key -> 监听目录, value -> 文件名 -> 文件快照 */
+    private final Map<Path, Map<String, FileStat>> snapshots = new ConcurrentHashMap<>();
+    /** 下次扫描时间 */
+    private volatile long nextScanTime;
+
+    PollingFileChangeDetector(long intervalMs) {
+        this.intervalMs = intervalMs;
+        this.nextScanTime = System.currentTimeMillis() + intervalMs;
+    }
+
+    @Override
+    public void watch(Path dir) {
+        snapshots.computeIfAbsent(dir, this::scan);
+    }
+
+    @Override
+    public void unwatch(Path dir) {
+        snapshots.remove(dir);
+    }
+
+    @Override
+    public List<FileChange> poll(long timeoutMs) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long waitMs = nextScanTime - now;
+        if (timeoutMs >= 0) {
+            waitMs = Math.min(waitMs, timeoutMs);
+        }
+        if (waitMs > 0) {
+            Thread.sleep(waitMs);
+        }
+        if (System.currentTimeMillis() < nextScanTime) {
+            return Collections.emptyList();
+        }
+        return scanAll();
+    }
+
+    /**
+     * @return 下次扫描时间
+     */
+    long nextScanTime() {
+        return nextScanTime;
+    }
+
+    /**
+     * 扫描所有监听目录, 并与快照对比
+     */
+    List<FileChange> scanAll() {
+        long startTime = System.currentTimeMillis();
+        List<FileChange> changes = new ArrayList<>();
+        int fileCount = 0;
+        for (Path dir : snapshots.keySet()) {
+            fileCount += scanDir(dir, changes);
+        }
+        long endTime = System.currentTimeMillis();
+        nextScanTime = endTime + intervalMs;
+        log.debug("scan {} directories, {} files, found {} changes, cost {} ms", snapshots.size(), fileCount, changes.size(), endTime - startTime);
+        return changes;
+    }
+
+    /**
+     * 扫描单个目录, 并与快照对比
+     *
+     * @return 目录下文件数量
+     */
+    int scanDir(Path dir, List<FileChange> changes) {
+        Map<String, FileStat> old = snapshots.get(dir);
+        if (Objects.isNull(old)) {
+            return 0;
+        }
+        Map<String, FileStat> snapshot = scan(dir);
+        for (Map.Entry<String, FileStat> entry : snapshot.entrySet()) {
+            FileStat oldStat = old.get(entry.getKey());
+            if (Objects.isNull(oldStat)) {
+                changes.add(new FileChange(dir.resolve(entry.getKey()), Kind.CREATE));
+            } else if (!oldStat.equals(entry.getValue())) {
+                changes.add(new FileChange(dir.resolve(entry.getKey()), Kind.MODIFY));
+            }
+        }
+        //目录已取消监听, 则不更新快照
+        snapshots.replace(dir, old, snapshot);
+        return snapshot.size();
+    }
+
+    /**
+     * 刷新单个文件的快照, 用于其他途径已感知该文件变化时, 避免下次扫描重复触发
+     *
+     * @param file 标准化后的文件路径
+     */
+    void refresh(Path file) {
+        Map<String, FileStat> snapshot = snapshots.get(file.getParent());
+        if (Objects.isNull(snapshot)) {
+            return;
+        }
+        String fileName = file.getFileName().toString();
+        try {
+            snapshot.put(fileName, FileStat.of(Files.readAttributes(file, BasicFileAttributes.class)));
+        } catch (IOException e) {
+            snapshot.remove(fileName);
+        }
+    }
+
+    /**
+     * 扫描目录, 生成快照
+     */
+    private Map<String, FileStat> scan(Path dir) {
+        Map<String, FileStat> snapshot = new ConcurrentHashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                try {
+                    snapshot.put(file.getFileName().toString(), FileStat.of(Files.readAttributes(file, BasicFileAttributes.class)));
+                } catch (IOException e) {
+                    //扫描过程中文件被删除, 忽略
+                }
+            }
+        } catch (IOException e) {
+            log.error(String.format("scan directory '%s' error", dir), e);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        snapshots.clear();
+    }
+
+    /**
+     * 文件快照
+     */
+    private static final class FileStat {
+        /** 文件大小 */
+        private final long size;
+        /** 文件修改时间 */
+        private final long lastModifiedTime;
+        /** 文件唯一标识, 一般是设备号+inode, 原子rename覆盖会变化, 部分文件系统不支持则为null */
+        private final Object fileKey;
+
+        private FileStat(long size, long lastModifiedTime, Object fileKey) {
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+            this.fileKey = fileKey;
+        }
+
+        static FileStat of(BasicFileAttributes attrs) {
+            if (attrs.isDirectory()) {
+                //子目录仅关注新建, 其内容变化会导致修改时间变化, 忽略
+                return new FileStat(-1, 0, attrs.fileKey());
+            }
+            return new FileStat(attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            FileStat fileStat = (FileStat) o;
+            return size == fileStat.size &&
+                    lastModifiedTime == fileStat.lastModifiedTime &&
+                    Objects.equals(fileKey, fileStat.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModifiedTime, fileKey);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.kin.framework.hotswap;
+
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+
+/**
+ * 类热更新以及文件热加载的执行线程池
+ * <p>
+ * 两者相互隔离, 类热更新不会排在大量文件热加载任务后面:
+ * 1. 类热更新, 独立的单线程线程池, 无界队列, 类热更新本身需互斥执行, 且数量很少
+ * 仅是隔离, 并没有优先级调度, 执行时仍与文件热加载线程竞争CPU, 队列也没有上限
+ * 2. 文件热加载, 固定线程数, 有界队列, 队列满则按{@link RejectPolicy}处理, 以提供背压
+ * JDK21+开启{@link #VIRTUAL_THREADS}后, 文件热加载改为每个任务一个虚拟线程, 并发数即线程数+队列容量, 详见{@link VirtualThreads}
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+final class ReloadExecutors {
+    private static final Logger log = LoggerFactory.getLogger(ReloadExecutors.class);
+    /** 文件热加载线程数 */
+    private static final int RELOAD_THREADS = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.reload.threads", String.valueOf(SysUtils.CPU_NUM)));
+    /** 文件热加载队列容量 */
+    private static final int RELOAD_QUEUE_CAPACITY = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.reload.queueCapacity", "1024"));
+    /** 文件热加载队列满时的处理策略 */
+    private static final RejectPolicy REJECT_POLICY = RejectPolicy.of(SysUtils.getSysProperty("kin.hotswap.reload.rejectPolicy", "callerRuns"));
+    /** 文件热加载是否使用虚拟线程, 仅JDK21+有效 */
+    private static final boolean VIRTUAL_THREADS = Boolean.parseBoolean(SysUtils.getSysProperty("kin.hotswap.reload.virtualThreads", "false"));
+
+    private ReloadExecutors() {
+    }
+
+    /**
+     * @return 类热更新线程池
+     */
+    static ExecutorService classHotswap() {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("classHotswap"));
+    }
+
+    /**
+     * @return 文件热加载线程池
+     */
+    static ExecutorService fileReload() {
+        int threads = Math.max(RELOAD_THREADS, 1);
+        int queueCapacity = Math.max(RELOAD_QUEUE_CAPACITY, 1);
+        if (VIRTUAL_THREADS) {
+            if (VirtualThreads.isSupported()) {
+                log.info("file reload use virtual threads, concurrency {}, reject policy {}", threads + queueCapacity, REJECT_POLICY);
+                return VirtualThreads.newBoundedExecutor("fileReload", threads + queueCapacity, REJECT_POLICY);
+            }
+            log.warn("virtual threads is not supported in java {}, fallback to platform threads", System.getProperty("java.version"));
+        }
+
+        log.info("file reload threads {}, queue capacity {}, reject policy {}", threads, queueCapacity, REJECT_POLICY);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("fileReload"),
+                REJECT_POLICY == RejectPolicy.CALLER_RUNS ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy());
+        //空闲时不占用线程
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 文件热加载队列满时的处理策略
+     */
+    enum RejectPolicy {
+        /** 抛出{@link RejectedExecutionException}, 本次热加载丢弃, 文件再次变化才会再热加载 */
+        ABORT,
+        /** 在提交线程, 即{@link FileMonitor}线程执行, 期间不再处理文件变化事件, 以此实现背压 */
+        CALLER_RUNS,
+        ;
+
+        static RejectPolicy of(String name) {
+            if ("abort".equalsIgnoreCase(name)) {
+                return ABORT;
+            }
+            if ("callerRuns".equalsIgnoreCase(name)) {
+                return CALLER_RUNS;
+            }
+            throw new IllegalArgumentException(String.format("unknown file reload reject policy '%s'", name));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.kin.framework.hotswap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 依赖图中所有{@link AbstractSnapshotFileReloadable}快照的一致视图
+ * <p>
+ * 按依赖图批量热加载成功后, 整批新快照一起生成新的generation, 并通过一次volatile写发布
+ * 读线程先通过{@link #current()}获取generation, 再从中读取多个reloadable的数据, 即可保证读到的是同一批次的数据,
+ * 不会出现道具表是新的, 掉落表却是旧的情况
+ * 单独通过{@link AbstractSnapshotFileReloadable#get()}读取, 则仅保证单个reloadable数据的一致性
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+public final class ReloadGeneration {
+    private static final Logger log = LoggerFactory.getLogger(ReloadGeneration.class);
+    /** 当前generation */
+    private static volatile ReloadGeneration current = new ReloadGeneration(0, Collections.emptyMap());
+
+    /** generation id, 从1开始, 每次发布+1 */
+    private final long id;
+    /** key -> 依赖图中的reloadable, value -> 该generation的快照 */
+    private final Map<AbstractSnapshotFileReloadable<?>, AbstractSnapshotFileReloadable.Snapshot<?>> snapshots;
+
+    private ReloadGeneration(long id, Map<AbstractSnapshotFileReloadable<?>, AbstractSnapshotFileReloadable.Snapshot<?>> snapshots) {
+        this.id = id;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * @return 当前generation
+     */
+    public static ReloadGeneration current() {
+        return current;
+    }
+
+    /**
+     * 基于当前generation, 替换{@code published}中的快照, 生成并发布新的generation
+     *
+     * @param published 新发布的快照
+     * @return 新的generation
+     */
+    static synchronized ReloadGeneration advance(Map<? extends AbstractSnapshotFileReloadable<?>, ? extends AbstractSnapshotFileReloadable.Snapshot<?>> published) {
+        ReloadGeneration old = current;
+        Map<AbstractSnapshotFileReloadable<?>, AbstractSnapshotFileReloadable.Snapshot<?>> snapshots = new IdentityHashMap<>(old.snapshots);
+        snapshots.putAll(published);
+        ReloadGeneration generation = new ReloadGeneration(old.id + 1, Collections.unmodifiableMap(snapshots));
+        current = generation;
+        log.info("publish reload generation {}, {} snapshots updated", generation.id, published.size());
+        return generation;
+    }
+
+    /**
+     * @return 该generation中{@code reloadable}的数据, 不在依赖图中则返回其当前数据
+     */
+    public <T> T get(AbstractSnapshotFileReloadable<T> reloadable) {
+        return snapshot(reloadable).getValue();
+    }
+
+    /**
+     * @return 该generation中{@code reloadable}的快照, 不在依赖图中则返回其当前快照
+     */
+    @SuppressWarnings("unchecked")
+    public <T> AbstractSnapshotFileReloadable.Snapshot<T> snapshot(AbstractSnapshotFileReloadable<T> reloadable) {
+        AbstractSnapshotFileReloadable.Snapshot<T> snapshot = (AbstractSnapshotFileReloadable.Snapshot<T>) snapshots.get(reloadable);
+        return Objects.nonNull(snapshot) ? snapshot : reloadable.snapshot();
+    }
+
+    //getter
+    public long getId() {
+        return id;
+    }
+}
@@ -5,6 +5,7 @@ package org.kin.framework.hotswap;
  * <p>
  * 本热更方式侵入很强,要求开发者手动实现继承抽象类,甚至有些情况,需开发定制热更替换实例逻辑
  * 热更新的实例如果不是volatile,并不保证立即'可见',可能拿到的是旧的数据(引用)
+ * 文件热更新推荐使用{@link AbstractSnapshotFileReloadable}, 其保证新数据发布后立即可见, 且读无锁
  *
  * @author huangjianqin
  * @date 2018/1/31
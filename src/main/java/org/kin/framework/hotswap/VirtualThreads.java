@@ -0,0 +1,33 @@
+package org.kin.framework.hotswap;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 虚拟线程支持, JDK21以下不支持
+ * JDK21+由multi-release jar中META-INF/versions/21下的同名类替代, 源码位于src/main/java21
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 是否支持虚拟线程
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池, 并发数有限
+     *
+     * @param name         线程名前缀
+     * @param concurrency  最大并发数
+     * @param rejectPolicy 超过最大并发数时的处理策略
+     */
+    static ExecutorService newBoundedExecutor(String name, int concurrency, ReloadExecutors.RejectPolicy rejectPolicy) {
+        throw new UnsupportedOperationException("virtual threads require java 21+");
+    }
+}
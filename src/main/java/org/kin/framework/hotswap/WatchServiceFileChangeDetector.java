@@ -0,0 +1,85 @@
+package org.kin.framework.hotswap;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于{@link WatchService}的文件变化检测策略
+ * 监听{@link StandardWatchEventKinds#ENTRY_CREATE}以及{@link StandardWatchEventKinds#ENTRY_MODIFY}, 原子rename覆盖文件时仅会触发前者
+ *
+ * @author huangjianqin
+ * @date 2022/3/10
+ */
+final class WatchServiceFileChangeDetector implements FileChangeDetector {
+    /** 文件变化监听服务, 基于文件系统事件触发 */
+    private final WatchService watchService;
+    /** key -> 监听目录 */
+    private final Map<Path, WatchKey> keys = new ConcurrentHashMap<>();
+
+    WatchServiceFileChangeDetector() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    @Override
+    public void watch(Path dir) throws IOException {
+        if (keys.containsKey(dir)) {
+            return;
+        }
+        keys.put(dir, dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+    }
+
+    @Override
+    public void unwatch(Path dir) {
+        WatchKey key = keys.remove(dir);
+        if (Objects.nonNull(key)) {
+            key.cancel();
+        }
+    }
+
+    @Override
+    public List<FileChange> poll(long timeoutMs) throws InterruptedException {
+        WatchKey key = timeoutMs < 0 ? watchService.take() : watchService.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (Objects.isNull(key)) {
+            return Collections.emptyList();
+        }
+
+        List<FileChange> changes = new ArrayList<>();
+        //把已就绪的key一并处理
+        while (Objects.nonNull(key)) {
+            collect(key, changes);
+            key = watchService.poll();
+        }
+        return changes;
+    }
+
+    /**
+     * 将{@link WatchKey}的事件转换成{@link FileChange}
+     */
+    private void collect(WatchKey key, List<FileChange> changes) {
+        //变化的路径, 注册时已标准化
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                changes.add(new FileChange(dir, Kind.OVERFLOW));
+            } else {
+                Kind changeKind = kind == StandardWatchEventKinds.ENTRY_CREATE ? Kind.CREATE : Kind.MODIFY;
+                changes.add(new FileChange(dir.resolve(event.context().toString()), changeKind));
+            }
+        }
+        //重置状态，让key等待事件
+        key.reset();
+    }
+
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            //ignore
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.kin.framework.hotswap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64实现, 非加密hash, 用于快速判断文件(class文件或热加载文件)内容是否变化
+ * 相对于md5, 无需{@link java.security.MessageDigest}, 也无需转换成16进制字符串
+ *
+ * @author huangjianqin
+ * @date 2022/3/6
+ */
+public final class XxHash64 {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    /**
+     * 计算{@code bytes}的hash
+     */
+    public static long hash(byte[] bytes) {
+        return hash(ByteBuffer.wrap(bytes), 0);
+    }
+
+    /**
+     * 计算{@code buffer} position至limit之间内容的hash, 不会修改{@code buffer}的position和limit
+     */
+    public static long hash(ByteBuffer buffer) {
+        return hash(buffer, 0);
+    }
+
+    /**
+     * 计算{@code buffer} position至limit之间内容的hash, 不会修改{@code buffer}的position和limit
+     *
+     * @param seed hash种子
+     */
+    public static long hash(ByteBuffer buffer, long seed) {
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = buf.position();
+        int end = buf.limit();
+        int len = end - pos;
+
+        long hash;
+        if (len >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, buf.getLong(pos));
+                v2 = round(v2, buf.getLong(pos + 8));
+                v3 = round(v3, buf.getLong(pos + 16));
+                v4 = round(v4, buf.getLong(pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+
+            hash = converge(v1, v2, v3, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+
+        hash += len;
+        return finish(hash, buf, pos, end);
+    }
+
+    /**
+     * 合并4路累加结果
+     */
+    private static long converge(long v1, long v2, long v3, long v4) {
+        long hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        hash = mergeRound(hash, v1);
+        hash = mergeRound(hash, v2);
+        hash = mergeRound(hash, v3);
+        return mergeRound(hash, v4);
+    }
+
+    /**
+     * 处理不足32字节的剩余内容
+     *
+     * @param buf little endian buffer
+     */
+    private static long finish(long hash, ByteBuffer buf, int pos, int end) {
+        while (pos + 8 <= end) {
+            hash ^= round(0, buf.getLong(pos));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            pos += 8;
+        }
+
+        if (pos + 4 <= end) {
+            hash ^= (buf.getInt(pos) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            pos += 4;
+        }
+
+        while (pos < end) {
+            hash ^= (buf.get(pos) & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            pos++;
+        }
+
+        //avalanche
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 流式计算hash, 内容分多次传入, 结果与一次性计算一致, 用于无法一次性读取全部内容的场景
+     * 非线程安全
+     */
+    public static final class Streaming {
+        private final long seed;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        /** 不足32字节的待处理内容 */
+        private final byte[] pending = new byte[32];
+        /** 待处理内容长度 */
+        private int pendingLen;
+        /** 已传入的内容总长度 */
+        private long totalLen;
+
+        public Streaming() {
+            this(0);
+        }
+
+        public Streaming(long seed) {
+            this.seed = seed;
+            this.v1 = seed + PRIME1 + PRIME2;
+            this.v2 = seed + PRIME2;
+            this.v3 = seed;
+            this.v4 = seed - PRIME1;
+        }
+
+        public void update(int b) {
+            pending[pendingLen++] = (byte) b;
+            totalLen++;
+            if (pendingLen == 32) {
+                consume(ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN), 0);
+                pendingLen = 0;
+            }
+        }
+
+        public void update(byte[] bytes, int off, int len) {
+            totalLen += len;
+            int end = off + len;
+            if (pendingLen > 0) {
+                int fill = Math.min(32 - pendingLen, len);
+                System.arraycopy(bytes, off, pending, pendingLen, fill);
+                pendingLen += fill;
+                off += fill;
+                if (pendingLen < 32) {
+                    return;
+                }
+                consume(ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN), 0);
+                pendingLen = 0;
+            }
+
+            if (end - off >= 32) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+                for (; off + 32 <= end; off += 32) {
+                    consume(buf, off);
+                }
+            }
+            pendingLen = end - off;
+            System.arraycopy(bytes, off, pending, 0, pendingLen);
+        }
+
+        /**
+         * 处理32字节
+         */
+        private void consume(ByteBuffer buf, int pos) {
+            v1 = round(v1, buf.getLong(pos));
+            v2 = round(v2, buf.getLong(pos + 8));
+            v3 = round(v3, buf.getLong(pos + 16));
+            v4 = round(v4, buf.getLong(pos + 24));
+        }
+
+        /**
+         * @return 已传入内容的hash, 不影响后续继续传入
+         */
+        public long getValue() {
+            long hash = totalLen >= 32 ? converge(v1, v2, v3, v4) : seed + PRIME5;
+            hash += totalLen;
+            return finish(hash, ByteBuffer.wrap(pending).order(ByteOrder.LITTLE_ENDIAN), 0, pendingLen);
+        }
+
+        /**
+         * @return 已传入的内容总长度
+         */
+        public long getLength() {
+            return totalLen;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.kin.framework.hotswap.HotswapPhase;
+import org.kin.framework.hotswap.HotswapStatistics;
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分批redefine
+ * <p>
+ * 一次{@link Instrumentation#redefineClasses}期间所有业务线程都会停在safepoint, 类数量很多时会暂停数秒
+ * 开启后, 按暂停预算{@link #PAUSE_BUDGET_MS}将待redefine的类拆分成多批, 每批间隔{@link #INTERVAL_MS}执行
+ * 同一外部类的内部类(包括nest mate), 以及同一批次内存在继承关系的类, 总是在同一批redefine, 以免不同批次间类结构不一致
+ * 每批的大小根据上一批每个类的平均redefine耗时动态调整, 单个分组超出预算也不会拆分
+ * <p>
+ * 某一批redefine失败, 则将之前已redefine的批次逆序恢复为redefine前的字节码, 然后抛出异常
+ * redefine前的字节码优先使用上次热更新的字节码, 否则在每批redefine前通过retransform获取当前字节码, retransform同样会暂停, 不计入预算
+ * <p>
+ * 整个分批redefine期间都持有{@link ClassHotswap}的热更新锁, 以免其他热更新打断中间状态以及回滚, 期间其他热更新(包括JMX触发的)会等待,
+ * 因此批次间隔总和不超过{@link #MAX_TOTAL_INTERVAL_MS}, 超出后剩余批次不再间隔, 连续redefine
+ * <p>
+ * 注意, 分批期间会存在部分类已redefine, 部分类还没redefine的中间状态, 因此默认关闭, 仍然是一次redefine所有类
+ *
+ * @author huangjianqin
+ * @date 2022/3/14
+ */
+final class ChunkedRedefiner {
+    private static final Logger log = LoggerFactory.getLogger(ChunkedRedefiner.class);
+    /** 是否开启分批redefine */
+    static final boolean ENABLED = Boolean.parseBoolean(SysUtils.getSysProperty("kin.hotswap.chunked", "false"));
+    /** 每批redefine的暂停预算(ms) */
+    private static final long PAUSE_BUDGET_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.chunk.pauseBudget", "50"));
+    /** 批次间隔(ms), 让业务线程有时间执行 */
+    private static final long INTERVAL_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.chunk.interval", "100"));
+    /** 批次间隔总和上限(ms), 限制持有热更新锁的时间 */
+    private static final long MAX_TOTAL_INTERVAL_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.chunk.maxTotalInterval", "1000"));
+    /** 首批的类数量, 后续批次根据实际耗时调整 */
+    private static final int INITIAL_CHUNK_SIZE = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.chunk.initialSize", "64"));
+
+    private final Instrumentation instrumentation;
+    /** 上次热更新的字节码, 即当前字节码, 用于回滚 */
+    private final Map<Class<?>, byte[]> currentBytes;
+
+    /**
+     * @param currentBytes 上次热更新的字节码, 仅读取, 由调用方在热更新成功后更新
+     */
+    ChunkedRedefiner(Instrumentation instrumentation, Map<Class<?>, byte[]> currentBytes) {
+        this.instrumentation = instrumentation;
+        this.currentBytes = currentBytes;
+    }
+
+    /**
+     * 分批redefine, 失败则回滚已redefine的批次
+     *
+     * @param classDefinitions 待热更新的class定义
+     * @param result           热更新结果
+     */
+    void redefine(List<ClassDefinition> classDefinitions, HotswapResult result) throws Exception {
+        HotswapStatistics statistics = HotswapStatistics.instance();
+        List<List<ClassDefinition>> groups = group(classDefinitions);
+        //已redefine的批次, 用于回滚
+        Deque<List<ClassDefinition>> redefinedChunks = new ArrayDeque<>();
+        //平均每个类redefine耗时(ns), 用于估算批次大小
+        double nanosPerClass = (double) TimeUnit.MILLISECONDS.toNanos(PAUSE_BUDGET_MS) / Math.max(INITIAL_CHUNK_SIZE, 1);
+        long maxPauseNanos = 0;
+        //上一批的类数量, 每批最多翻倍, 以免redefine固定开销导致估算偏差过大
+        int lastChunkSize = Math.max(INITIAL_CHUNK_SIZE, 1);
+        //已间隔的时间(ms)
+        long totalIntervalMs = 0;
+        int groupIndex = 0;
+        while (groupIndex < groups.size()) {
+            //按预算凑一批, 至少一个分组
+            int chunkSize = (int) Math.max(Math.min(TimeUnit.MILLISECONDS.toNanos(PAUSE_BUDGET_MS) / nanosPerClass, lastChunkSize * 2L), 1);
+            List<ClassDefinition> chunk = new ArrayList<>(groups.get(groupIndex++));
+            while (groupIndex < groups.size() && chunk.size() + groups.get(groupIndex).size() <= chunkSize) {
+                chunk.addAll(groups.get(groupIndex++));
+            }
+
+            List<ClassDefinition> rollbackDefinitions;
+            long startTime;
+            try {
+                long intervalMs = Math.min(INTERVAL_MS, MAX_TOTAL_INTERVAL_MS - totalIntervalMs);
+                if (!redefinedChunks.isEmpty() && intervalMs > 0) {
+                    Thread.sleep(intervalMs);
+                    totalIntervalMs += intervalMs;
+                }
+                rollbackDefinitions = rollbackDefinitions(chunk);
+                startTime = System.nanoTime();
+                instrumentation.redefineClasses(chunk.toArray(new ClassDefinition[0]));
+            } catch (Exception | LinkageError e) {
+                log.error("redefine chunk {} fail, {} classes, rollback {} redefined chunks", redefinedChunks.size() + 1, chunk.size(), redefinedChunks.size());
+                rollback(redefinedChunks, e);
+                throw e;
+            }
+            long costNanos = System.nanoTime() - startTime;
+            statistics.record(HotswapPhase.REDEFINE, null, costNanos);
+            maxPauseNanos = Math.max(maxPauseNanos, costNanos);
+            nanosPerClass = Math.max((double) costNanos / chunk.size(), 1);
+            lastChunkSize = chunk.size();
+            redefinedChunks.push(rollbackDefinitions);
+            log.info("redefine chunk {} finished, {} classes, cost {} ms", redefinedChunks.size(), chunk.size(), TimeUnit.NANOSECONDS.toMillis(costNanos));
+        }
+        result.setRedefineChunks(redefinedChunks.size());
+        result.setMaxRedefinePauseMs(TimeUnit.NANOSECONDS.toMillis(maxPauseNanos));
+    }
+
+    /**
+     * 获取redefine前的字节码, 用于回滚
+     *
+     * @param chunk 待redefine的批次
+     * @return 回滚用的class定义
+     */
+    private List<ClassDefinition> rollbackDefinitions(List<ClassDefinition> chunk) throws Exception {
+        List<ClassDefinition> rollbackDefinitions = new ArrayList<>(chunk.size());
+        //没有缓存字节码的类
+        Set<Class<?>> unknownClasses = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ClassDefinition classDefinition : chunk) {
+            Class<?> definitionClass = classDefinition.getDefinitionClass();
+            byte[] bytes = currentBytes.get(definitionClass);
+            if (Objects.nonNull(bytes)) {
+                rollbackDefinitions.add(new ClassDefinition(definitionClass, bytes));
+            } else {
+                unknownClasses.add(definitionClass);
+            }
+        }
+        if (unknownClasses.isEmpty()) {
+            return rollbackDefinitions;
+        }
+
+        //通过retransform获取当前字节码, transformer不修改字节码
+        Map<Class<?>, byte[]> capturedBytes = new IdentityHashMap<>();
+        ClassFileTransformer capturer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                    ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+                if (Objects.nonNull(classBeingRedefined) && unknownClasses.contains(classBeingRedefined)) {
+                    synchronized (capturedBytes) {
+                        capturedBytes.put(classBeingRedefined, classfileBuffer.clone());
+                    }
+                }
+                return null;
+            }
+        };
+        instrumentation.addTransformer(capturer, true);
+        try {
+            instrumentation.retransformClasses(unknownClasses.toArray(new Class<?>[0]));
+        } finally {
+            instrumentation.removeTransformer(capturer);
+        }
+
+        for (Class<?> unknownClass : unknownClasses) {
+            byte[] bytes = capturedBytes.get(unknownClass);
+            if (Objects.isNull(bytes)) {
+                throw new ClassHotswapException(String.format("can not capture current bytes of class '%s' for rollback", unknownClass.getName()));
+            }
+            rollbackDefinitions.add(new ClassDefinition(unknownClass, bytes));
+        }
+        return rollbackDefinitions;
+    }
+
+    /**
+     * 逆序回滚已redefine的批次
+     *
+     * @param redefinedChunks 已redefine的批次对应的回滚class定义
+     * @param cause           redefine失败原因, 回滚失败的异常会添加到其suppressed
+     */
+    private void rollback(Deque<List<ClassDefinition>> redefinedChunks, Throwable cause) {
+        while (!redefinedChunks.isEmpty()) {
+            List<ClassDefinition> rollbackDefinitions = redefinedChunks.pop();
+            try {
+                instrumentation.redefineClasses(rollbackDefinitions.toArray(new ClassDefinition[0]));
+            } catch (Exception | LinkageError e) {
+                log.error(String.format("rollback chunk %d fail, %d classes", redefinedChunks.size() + 1, rollbackDefinitions.size()), e);
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * 分组, 同一外部类的内部类, 以及存在继承关系的类在同一组
+     * 基于并查集实现, 仅考虑同一class loader加载的类
+     *
+     * @param classDefinitions 待热更新的class定义
+     * @return 分组后的class定义, 组内以及组间保持原有顺序
+     */
+    static List<List<ClassDefinition>> group(List<ClassDefinition> classDefinitions) {
+        int size = classDefinitions.size();
+        int[] parents = new int[size];
+        //key -> class, value -> 下标
+        Map<Class<?>, Integer> class2Index = new IdentityHashMap<>(size);
+        //key -> [外部类名, class loader], value -> 下标
+        Map<List<Object>, Integer> outer2Index = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+            Class<?> definitionClass = classDefinitions.get(i).getDefinitionClass();
+            class2Index.put(definitionClass, i);
+
+            String className = definitionClass.getName();
+            int dollarIndex = className.indexOf('$');
+            String outerClassName = dollarIndex > 0 ? className.substring(0, dollarIndex) : className;
+            Integer outerIndex = outer2Index.putIfAbsent(Arrays.asList(outerClassName, definitionClass.getClassLoader()), i);
+            if (Objects.nonNull(outerIndex)) {
+                union(parents, outerIndex, i);
+            }
+        }
+
+        for (int i = 0; i < size; i++) {
+            Class<?> definitionClass = classDefinitions.get(i).getDefinitionClass();
+            Integer superIndex = class2Index.get(definitionClass.getSuperclass());
+            if (Objects.nonNull(superIndex)) {
+                union(parents, superIndex, i);
+            }
+            for (Class<?> interfaceClass : definitionClass.getInterfaces()) {
+                Integer interfaceIndex = class2Index.get(interfaceClass);
+                if (Objects.nonNull(interfaceIndex)) {
+                    union(parents, interfaceIndex, i);
+                }
+            }
+        }
+
+        //key -> 根下标
+        Map<Integer, List<ClassDefinition>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            groups.computeIfAbsent(find(parents, i), k -> new ArrayList<>()).add(classDefinitions.get(i));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA != rootB) {
+            //以较小下标为根, 保持原有顺序
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.kin.framework.hotswap.jclass;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 待解析的class文件, 独立的class文件, zip包内的class文件或者内存中的class文件内容
+ * 仅记录class文件位置, 在解析阶段才读取内容, 以便于并行读取
+ *
+ * @author huangjianqin
+ * @date 2022/3/7
+ */
+final class ClassFileEntry {
+    /** class文件后缀 */
+    private static final String CLASS_SUFFIX = ".class";
+    /** class文件路径, zip包内的class文件则是模拟uri的路径格式 */
+    private final String filePath;
+    /** class文件修改时间 */
+    private final long lastModifyTime;
+    /** 独立的class文件路径 */
+    private final Path path;
+    /** class文件所在zip包 */
+    private final ZipFile zipFile;
+    /** zip entry */
+    private final ZipEntry zipEntry;
+    /** 内存中的class文件内容 */
+    private final byte[] bytes;
+    /** 目标class loader, 为null则不指定 */
+    private final ClassLoader targetClassLoader;
+
+    private ClassFileEntry(String filePath, long lastModifyTime, Path path, ZipFile zipFile, ZipEntry zipEntry, byte[] bytes,
+                           ClassLoader targetClassLoader) {
+        this.filePath = filePath;
+        this.lastModifyTime = lastModifyTime;
+        this.path = path;
+        this.zipFile = zipFile;
+        this.zipEntry = zipEntry;
+        this.bytes = bytes;
+        this.targetClassLoader = targetClassLoader;
+    }
+
+    /**
+     * 独立的class文件
+     *
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     */
+    static ClassFileEntry file(Path path, ClassLoader targetClassLoader) throws IOException {
+        return new ClassFileEntry(path.toString(), Files.getLastModifiedTime(path).toMillis(), path, null, null, null, targetClassLoader);
+    }
+
+    /**
+     * zip包内的class文件
+     *
+     * @param zipFilePath       模拟uri的zip路径格式
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     */
+    static ClassFileEntry zipEntry(String zipFilePath, ZipFile zipFile, ZipEntry zipEntry, ClassLoader targetClassLoader) {
+        return new ClassFileEntry(zipFilePath + zipEntry.getName(), zipEntry.getTime(), null, zipFile, zipEntry, null, targetClassLoader);
+    }
+
+    /**
+     * 内存中的class文件内容
+     *
+     * @param filePath          用于日志以及class文件信息的虚拟路径
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     */
+    static ClassFileEntry memory(String filePath, byte[] bytes, ClassLoader targetClassLoader) {
+        return new ClassFileEntry(filePath, System.currentTimeMillis(), null, null, null, bytes, targetClassLoader);
+    }
+
+    /**
+     * @return 是否已知crc32和大小, 即无需读取内容即可判断内容是否变化
+     */
+    boolean hasCrc() {
+        return Objects.nonNull(zipEntry) && zipEntry.getSize() >= 0 && zipEntry.getCrc() >= 0;
+    }
+
+    /**
+     * 根据zip entry路径推断class name, 比如a/b/C.class -> a.b.C
+     * 仅当{@link #hasCrc()}返回true时有效, zip包内路径与包名不一致时推断结果不是真实class name, 仅会导致无法预判, 退回到内容hash判断
+     */
+    String expectedClassName() {
+        String name = zipEntry.getName();
+        if (name.endsWith(CLASS_SUFFIX)) {
+            name = name.substring(0, name.length() - CLASS_SUFFIX.length());
+        }
+        return name.replace('/', '.');
+    }
+
+    /**
+     * 仅当{@link #hasCrc()}返回true时有效
+     */
+    int crc() {
+        return (int) zipEntry.getCrc();
+    }
+
+    /**
+     * 仅当{@link #hasCrc()}返回true时有效
+     */
+    int size() {
+        return (int) zipEntry.getSize();
+    }
+
+    /**
+     * 读取class文件内容
+     * zip包内的class文件直接解压到大小刚好的byte数组, 不经过中间buffer
+     */
+    byte[] read() throws IOException {
+        if (Objects.nonNull(bytes)) {
+            return bytes;
+        }
+        if (Objects.nonNull(path)) {
+            return Files.readAllBytes(path);
+        }
+
+        long size = zipEntry.getSize();
+        try (InputStream is = zipFile.getInputStream(zipEntry)) {
+            return size >= 0 ? readFully(is, (int) size) : readAll(is);
+        }
+    }
+
+    /**
+     * 读取{@code size}大小的内容
+     */
+    private static byte[] readFully(InputStream is, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int len = is.read(bytes, offset, size - offset);
+            if (len < 0) {
+                throw new EOFException(String.format("expect %d bytes, but only read %d bytes", size, offset));
+            }
+            offset += len;
+        }
+        return bytes;
+    }
+
+    /**
+     * 读取所有内容, 仅当zip entry大小未知时使用
+     */
+    static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(8192);
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) > 0) {
+            baos.write(buffer, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * 计算crc32
+     */
+    static int crc32(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes, 0, bytes.length);
+        return (int) crc32.getValue();
+    }
+
+    //getter
+    String getFilePath() {
+        return filePath;
+    }
+
+    long getLastModifyTime() {
+        return lastModifyTime;
+    }
+
+    ClassLoader getTargetClassLoader() {
+        return targetClassLoader;
+    }
+}
@@ -1,11 +1,5 @@
 package org.kin.framework.hotswap.jclass;
 
-import org.kin.framework.utils.ExceptionUtils;
-
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-
 /**
  * @author huangjianqin
  * @date 2019/3/1
@@ -17,27 +11,20 @@ public class ClassFileInfo {
     private final String className;
     /** class文件修改时间 */
     private final long lastModifyTime;
-    /** class文件内容md5编码 */
-    private final String md5;
+    /** class文件内容hash, 基于{@link org.kin.framework.hotswap.XxHash64} */
+    private final long hash;
+    /** class文件内容crc32, 与zip entry的crc32一致 */
+    private final int crc;
+    /** class文件大小 */
+    private final int size;
 
-    public ClassFileInfo(String filePath, String className, byte[] bytes, long lastModifyTime) {
+    public ClassFileInfo(String filePath, String className, long hash, int crc, int size, long lastModifyTime) {
         this.filePath = filePath;
         this.className = className;
         this.lastModifyTime = lastModifyTime;
-        this.md5 = this.md5(bytes);
-    }
-
-    private String md5(byte[] bytes) {
-        try {
-            MessageDigest me = MessageDigest.getInstance("MD5");
-            me.update(bytes);
-            BigInteger bi = new BigInteger(1, me.digest());
-            return bi.toString(16).toUpperCase();
-        } catch (NoSuchAlgorithmException e) {
-            ExceptionUtils.throwExt(e);
-        }
-
-        throw new ClassHotswapException("encounter unknown error");
+        this.hash = hash;
+        this.crc = crc;
+        this.size = size;
     }
 
     //getter
@@ -53,8 +40,16 @@ public class ClassFileInfo {
         return lastModifyTime;
     }
 
-    public String getMd5() {
-        return md5;
+    public long getHash() {
+        return hash;
+    }
+
+    public int getCrc() {
+        return crc;
+    }
+
+    public int getSize() {
+        return size;
     }
 
     @Override
@@ -63,7 +58,9 @@ public class ClassFileInfo {
                 "filePath='" + filePath + '\'' +
                 ", className='" + className + '\'' +
                 ", lastModifyTime=" + lastModifyTime +
-                ", md5='" + md5 + '\'' +
+                ", hash=" + Long.toHexString(hash) +
+                ", crc=" + Integer.toHexString(crc) +
+                ", size=" + size +
                 '}';
     }
 }
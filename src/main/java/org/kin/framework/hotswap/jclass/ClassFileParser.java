@@ -0,0 +1,336 @@
+package org.kin.framework.hotswap.jclass;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 轻量级class文件解析器
+ * <p>
+ * 仅遍历常量池并记录每个常量的偏移, 然后读取this_class, super_class, interfaces, 以及字段和方法的签名, 不解析属性以及字节码
+ * 相对于com.sun.tools.classfile.ClassFile, 无需构建完整的class文件模型, 也无需依赖tools包
+ *
+ * @author huangjianqin
+ * @date 2022/3/6
+ */
+public final class ClassFileParser {
+    /** class文件魔数 */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    //常量池tag
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String[] EMPTY_INTERFACES = new String[0];
+
+    private ClassFileParser() {
+    }
+
+    /**
+     * 解析class文件
+     *
+     * @param bytes class文件内容
+     */
+    public static ClassFileHeader parse(byte[] bytes) {
+        return parse(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * 解析class文件, 仅读取{@code buffer} position至limit之间的内容, 不会修改{@code buffer}的position和limit
+     *
+     * @param buffer class文件内容
+     */
+    public static ClassFileHeader parse(ByteBuffer buffer) {
+        int base = buffer.position();
+        int limit = buffer.limit();
+        if (limit - base < 10 || buffer.getInt(base) != MAGIC) {
+            throw new ClassHotswapException("invalid class file, magic number is not match");
+        }
+
+        int majorVersion = buffer.getShort(base + 6) & 0xFFFF;
+        int constantPoolCount = buffer.getShort(base + 8) & 0xFFFF;
+        //常量在buffer中的偏移(指向tag)
+        int[] offsets = new int[constantPoolCount];
+        int pos = base + 10;
+        for (int i = 1; i < constantPoolCount; i++) {
+            offsets[i] = pos;
+            int tag = buffer.get(pos) & 0xFF;
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    pos += 3 + (buffer.getShort(pos + 1) & 0xFFFF);
+                    break;
+                case CONSTANT_CLASS:
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    pos += 3;
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    pos += 4;
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    pos += 5;
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    pos += 9;
+                    //long和double占用两个常量池slot
+                    i++;
+                    break;
+                default:
+                    throw new ClassHotswapException(String.format("invalid class file, unknown constant pool tag %d at index %d", tag, i));
+            }
+            if (pos > limit) {
+                throw new ClassHotswapException("invalid class file, constant pool is truncated");
+            }
+        }
+
+        int accessFlags = buffer.getShort(pos) & 0xFFFF;
+        int thisClass = buffer.getShort(pos + 2) & 0xFFFF;
+        int superClass = buffer.getShort(pos + 4) & 0xFFFF;
+        int interfacesCount = buffer.getShort(pos + 6) & 0xFFFF;
+        pos += 8;
+
+        String className = className(buffer, offsets, thisClass);
+        //java.lang.Object没有父类
+        String superClassName = superClass == 0 ? null : className(buffer, offsets, superClass);
+        String[] interfaceNames = interfacesCount == 0 ? EMPTY_INTERFACES : new String[interfacesCount];
+        for (int i = 0; i < interfacesCount; i++) {
+            interfaceNames[i] = className(buffer, offsets, buffer.getShort(pos) & 0xFFFF);
+            pos += 2;
+        }
+
+        List<Member> fields = new ArrayList<>();
+        pos = members(buffer, offsets, pos, limit, fields);
+        List<Member> methods = new ArrayList<>();
+        members(buffer, offsets, pos, limit, methods);
+
+        return new ClassFileHeader(majorVersion, accessFlags, className, superClassName, interfaceNames, fields, methods);
+    }
+
+    /**
+     * 读取字段或者方法签名, 跳过其属性
+     *
+     * @param members 字段或者方法签名
+     * @return 字段表或者方法表之后的偏移
+     */
+    private static int members(ByteBuffer buffer, int[] offsets, int pos, int limit, List<Member> members) {
+        int count = buffer.getShort(pos) & 0xFFFF;
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            int accessFlags = buffer.getShort(pos) & 0xFFFF;
+            String name = utf8(buffer, offsets, buffer.getShort(pos + 2) & 0xFFFF);
+            String descriptor = utf8(buffer, offsets, buffer.getShort(pos + 4) & 0xFFFF);
+            int attributesCount = buffer.getShort(pos + 6) & 0xFFFF;
+            pos += 8;
+            for (int j = 0; j < attributesCount; j++) {
+                pos += 6 + buffer.getInt(pos + 2);
+            }
+            if (pos > limit) {
+                throw new ClassHotswapException("invalid class file, fields or methods is truncated");
+            }
+            members.add(new Member(accessFlags, name, descriptor));
+        }
+        return pos;
+    }
+
+    /**
+     * 读取CONSTANT_Utf8
+     */
+    private static String utf8(ByteBuffer buffer, int[] offsets, int utf8Index) {
+        int utf8Offset = offsets[utf8Index];
+        if (utf8Offset == 0 || (buffer.get(utf8Offset) & 0xFF) != CONSTANT_UTF8) {
+            throw new ClassHotswapException(String.format("invalid class file, constant pool index %d is not a utf8", utf8Index));
+        }
+        return utf8(buffer, utf8Offset + 3, buffer.getShort(utf8Offset + 1) & 0xFFFF, '/', '/');
+    }
+
+    /**
+     * 读取CONSTANT_Class指向的类名, 并将内部类名格式'/'转换成'.'
+     */
+    private static String className(ByteBuffer buffer, int[] offsets, int classIndex) {
+        int classOffset = offsets[classIndex];
+        if (classOffset == 0 || (buffer.get(classOffset) & 0xFF) != CONSTANT_CLASS) {
+            throw new ClassHotswapException(String.format("invalid class file, constant pool index %d is not a class", classIndex));
+        }
+        int utf8Offset = offsets[buffer.getShort(classOffset + 1) & 0xFFFF];
+        if (utf8Offset == 0 || (buffer.get(utf8Offset) & 0xFF) != CONSTANT_UTF8) {
+            throw new ClassHotswapException(String.format("invalid class file, class name of constant pool index %d is not a utf8", classIndex));
+        }
+        return utf8(buffer, utf8Offset + 3, buffer.getShort(utf8Offset + 1) & 0xFFFF, '/', '.');
+    }
+
+    /**
+     * 解码modified utf8字符串
+     *
+     * @param from 需替换的字符
+     * @param to   替换后的字符
+     */
+    static String utf8(ByteBuffer buffer, int offset, int len, char from, char to) {
+        char[] chars = new char[len];
+        int charsLen = 0;
+        int end = offset + len;
+        int pos = offset;
+        while (pos < end) {
+            int b = buffer.get(pos) & 0xFF;
+            char c;
+            if (b < 0x80) {
+                c = (char) b;
+                pos++;
+            } else if ((b & 0xE0) == 0xC0) {
+                c = (char) (((b & 0x1F) << 6) | (buffer.get(pos + 1) & 0x3F));
+                pos += 2;
+            } else {
+                c = (char) (((b & 0x0F) << 12) | ((buffer.get(pos + 1) & 0x3F) << 6) | (buffer.get(pos + 2) & 0x3F));
+                pos += 3;
+            }
+            chars[charsLen++] = c == from ? to : c;
+        }
+        return new String(chars, 0, charsLen);
+    }
+
+    /**
+     * class文件头信息
+     */
+    public static final class ClassFileHeader {
+        /** class文件major version */
+        private final int majorVersion;
+        /** access flags */
+        private final int accessFlags;
+        /** class name */
+        private final String className;
+        /** 父类class name, java.lang.Object则为null */
+        private final String superClassName;
+        /** 实现的接口class name */
+        private final String[] interfaceNames;
+        /** 字段签名 */
+        private final List<Member> fields;
+        /** 方法签名, 包括构造方法以及静态初始化方法 */
+        private final List<Member> methods;
+
+        ClassFileHeader(int majorVersion, int accessFlags, String className, String superClassName, String[] interfaceNames,
+                        List<Member> fields, List<Member> methods) {
+            this.majorVersion = majorVersion;
+            this.accessFlags = accessFlags;
+            this.className = className;
+            this.superClassName = superClassName;
+            this.interfaceNames = interfaceNames;
+            this.fields = fields;
+            this.methods = methods;
+        }
+
+        /**
+         * 检查已加载类的继承结构是否与class文件一致, redefine不支持修改继承结构
+         *
+         * @return 不一致的描述, 一致则返回null
+         */
+        public String checkHierarchy(Class<?> loaded) {
+            Class<?> superClass = loaded.getSuperclass();
+            String loadedSuperClassName = Objects.nonNull(superClass) ? superClass.getName() : null;
+            if (!Objects.equals(loadedSuperClassName, superClassName)) {
+                return String.format("super class changed from '%s' to '%s'", loadedSuperClassName, superClassName);
+            }
+
+            Class<?>[] interfaces = loaded.getInterfaces();
+            if (interfaces.length != interfaceNames.length) {
+                return String.format("interfaces count changed from %d to %d", interfaces.length, interfaceNames.length);
+            }
+            for (int i = 0; i < interfaces.length; i++) {
+                if (!interfaces[i].getName().equals(interfaceNames[i])) {
+                    return String.format("interface changed from '%s' to '%s'", interfaces[i].getName(), interfaceNames[i]);
+                }
+            }
+            return null;
+        }
+
+        //getter
+        public int getMajorVersion() {
+            return majorVersion;
+        }
+
+        public int getAccessFlags() {
+            return accessFlags;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getSuperClassName() {
+            return superClassName;
+        }
+
+        public String[] getInterfaceNames() {
+            return interfaceNames;
+        }
+
+        public List<Member> getFields() {
+            return Collections.unmodifiableList(fields);
+        }
+
+        public List<Member> getMethods() {
+            return Collections.unmodifiableList(methods);
+        }
+    }
+
+    /**
+     * 字段或者方法签名
+     */
+    public static final class Member {
+        /** access flags */
+        private final int accessFlags;
+        /** 名字 */
+        private final String name;
+        /** 描述符, 比如I, (Ljava/lang/String;)V */
+        private final String descriptor;
+
+        Member(int accessFlags, String name, String descriptor) {
+            this.accessFlags = accessFlags;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        //getter
+        public int getAccessFlags() {
+            return accessFlags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public String toString() {
+            return name + descriptor;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已热更新class的指纹索引, key -> 目标class loader + class name, value -> class文件内容hash, crc32以及大小
+ * <p>
+ * 用于在解析class文件前快速判断class文件内容是否有变化, 没有变化则直接跳过
+ * 对于zip包内的class文件, 可根据entry路径推断class name, 再与该class的crc32和大小比较, 无需解压
+ * 仅本进程热更新成功的class指纹才会用于过滤, 进程重启后运行的是原始字节码, 之前热更新过的补丁需重新redefine
+ * 按目标class loader分开索引, 热更新到某个class loader的class, 不会导致热更新到其他class loader时被过滤;
+ * 不指定目标class loader的热更新会redefine所有class loader的同名类, 因此会清掉该class在各class loader的索引, 反之亦然
+ * <p>
+ * 可选持久化, 重启后即可知道当前进程之前处于哪个补丁版本, 以及热更新过哪些class, 仅用于查询, 不参与过滤
+ * 先写入临时文件, 再原子重命名覆盖旧文件, 写入过程中进程退出也不会破坏旧文件
+ * <p>
+ * 持久化文件格式: magic(int) + version(int) + patch level(long) + class数量(int) + [class name长度(short) + class name(utf8) + hash(long) + crc32(int) + size(int)]...
+ *
+ * @author huangjianqin
+ * @date 2022/3/6
+ */
+public final class ClassFingerprintIndex {
+    private static final Logger log = LoggerFactory.getLogger(ClassFingerprintIndex.class);
+    /** 持久化文件魔数, 'KINF' */
+    private static final int MAGIC = 0x4B494E46;
+    /** 持久化文件格式版本 */
+    private static final int VERSION = 2;
+    /** 持久化文件头大小 */
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    /** 持久化临时文件后缀 */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** 不指定目标class loader时热更新成功的class指纹 */
+    private final LoaderIndex defaultIndex = new LoaderIndex();
+    /** 指定目标class loader时热更新成功的class指纹, key -> 目标class loader, 弱引用, 不影响class loader回收 */
+    private final Map<ClassLoader, LoaderIndex> loader2Index = Collections.synchronizedMap(new WeakHashMap<>());
+    /** 本进程最近一次热更新成功的class指纹, 不区分class loader, 仅用于查询以及持久化, key -> class name, value -> class指纹 */
+    private final Map<String, Fingerprint> name2Fingerprint = new ConcurrentHashMap<>();
+    /** 从持久化文件加载的历史class指纹, 仅用于查询, key -> class name, value -> class指纹 */
+    private final Map<String, Fingerprint> history = new ConcurrentHashMap<>();
+    /** 持久化文件路径, null则不持久化 */
+    private final Path persistPath;
+    /** 补丁版本, 每成功热更新一次+1 */
+    private volatile long patchLevel;
+
+    public ClassFingerprintIndex(Path persistPath) {
+        this.persistPath = persistPath;
+        if (Objects.nonNull(persistPath)) {
+            load();
+        }
+    }
+
+    /**
+     * 根据class文件内容hash和大小查找已热更新到目标class loader的class
+     *
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     * @return class name, 如果没有内容一致的已热更新class, 则返回null
+     */
+    public String find(ClassLoader targetClassLoader, long hash, int size) {
+        LoaderIndex index = index(targetClassLoader, false);
+        if (Objects.isNull(index)) {
+            return null;
+        }
+
+        String className = index.hash2Name.get(hash);
+        if (Objects.isNull(className)) {
+            return null;
+        }
+
+        Fingerprint fingerprint = index.name2Fingerprint.get(className);
+        if (Objects.isNull(fingerprint) || fingerprint.hash != hash || fingerprint.size != size) {
+            return null;
+        }
+        return className;
+    }
+
+    /**
+     * 根据class文件crc32和大小判断指定class是否已热更新过相同内容到目标class loader, 主要用于zip包内的class文件, 无需解压即可判断内容是否变化
+     * 仅与同名class比较, 不同class之间crc32碰撞不会导致误判
+     *
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     * @param className         根据zip entry路径推断的class name
+     * @return 是否已热更新过crc32和大小一致的同名class
+     */
+    public boolean containsCrc(ClassLoader targetClassLoader, String className, int crc, int size) {
+        LoaderIndex index = index(targetClassLoader, false);
+        if (Objects.isNull(index)) {
+            return false;
+        }
+        Fingerprint fingerprint = index.name2Fingerprint.get(className);
+        return Objects.nonNull(fingerprint) && fingerprint.crc == crc && fingerprint.size == size;
+    }
+
+    /**
+     * @param create 不存在时是否创建
+     * @return 目标class loader对应的索引
+     */
+    private LoaderIndex index(ClassLoader targetClassLoader, boolean create) {
+        if (Objects.isNull(targetClassLoader)) {
+            return defaultIndex;
+        }
+        if (create) {
+            return loader2Index.computeIfAbsent(targetClassLoader, k -> new LoaderIndex());
+        }
+        return loader2Index.get(targetClassLoader);
+    }
+
+    /**
+     * @return class指纹, 本进程没有热更新过该class, 则返回持久化文件中的历史指纹, 仅用于查询
+     */
+    public Fingerprint get(String className) {
+        Fingerprint fingerprint = name2Fingerprint.get(className);
+        if (Objects.nonNull(fingerprint)) {
+            return fingerprint;
+        }
+        return history.get(className);
+    }
+
+    /**
+     * 热更新成功后, 更新指纹索引, 并持久化
+     *
+     * @param loader2ClassFileInfos key -> 目标class loader, 为null则不指定, value -> 成功热更新的class文件信息
+     */
+    public synchronized void update(Map<ClassLoader, List<ClassFileInfo>> loader2ClassFileInfos) {
+        for (Map.Entry<ClassLoader, List<ClassFileInfo>> entry : loader2ClassFileInfos.entrySet()) {
+            ClassLoader targetClassLoader = entry.getKey();
+            LoaderIndex index = index(targetClassLoader, true);
+            for (ClassFileInfo classFileInfo : entry.getValue()) {
+                String className = classFileInfo.getClassName();
+                Fingerprint fingerprint = new Fingerprint(classFileInfo.getHash(), classFileInfo.getCrc(), classFileInfo.getSize());
+                if (Objects.isNull(targetClassLoader)) {
+                    //redefine了所有class loader的同名类, 各class loader的索引已失效
+                    synchronized (loader2Index) {
+                        for (LoaderIndex loaderIndex : loader2Index.values()) {
+                            loaderIndex.remove(className);
+                        }
+                    }
+                } else {
+                    //仅redefine了目标class loader的类, 所有class loader的同名类不再一致
+                    defaultIndex.remove(className);
+                }
+                index.put(className, fingerprint);
+                name2Fingerprint.put(className, fingerprint);
+            }
+        }
+        patchLevel++;
+
+        if (Objects.nonNull(persistPath)) {
+            persist();
+        }
+    }
+
+    /**
+     * 从持久化文件加载补丁版本以及历史class指纹
+     * 历史class指纹对应的字节码在进程重启后已失效, 因此不建立索引, 不参与过滤
+     */
+    private void load() {
+        if (!Files.exists(persistPath)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(persistPath, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.warn("class fingerprint index file '{}' is invalid, ignore it", persistPath);
+                return;
+            }
+
+            long patchLevel = buffer.getLong();
+            int count = buffer.getInt();
+            byte[] nameBytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int nameLen = buffer.getShort() & 0xFFFF;
+                if (nameBytes.length < nameLen) {
+                    nameBytes = new byte[nameLen];
+                }
+                buffer.get(nameBytes, 0, nameLen);
+                String className = new String(nameBytes, 0, nameLen, StandardCharsets.UTF_8);
+                history.put(className, new Fingerprint(buffer.getLong(), buffer.getInt(), buffer.getInt()));
+            }
+            this.patchLevel = patchLevel;
+            log.info("load class fingerprint index from '{}', patch level {}, {} classes", persistPath, patchLevel, count);
+        } catch (Exception e) {
+            log.error(String.format("load class fingerprint index from '%s' error", persistPath), e);
+        }
+    }
+
+    /**
+     * 持久化补丁版本以及历史class指纹, 本进程热更新过的class覆盖历史指纹
+     * 先写入临时文件, 再原子重命名覆盖旧文件
+     */
+    private void persist() {
+        //以同一份快照计算文件大小以及写入
+        Map<String, Fingerprint> snapshot = new HashMap<>(history);
+        snapshot.putAll(name2Fingerprint);
+        List<byte[]> names = new ArrayList<>(snapshot.size());
+        List<Fingerprint> fingerprints = new ArrayList<>(snapshot.size());
+        int fileSize = HEADER_SIZE;
+        for (Map.Entry<String, Fingerprint> entry : snapshot.entrySet()) {
+            byte[] nameBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(nameBytes);
+            fingerprints.add(entry.getValue());
+            fileSize += 2 + nameBytes.length + 8 + 4 + 4;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(patchLevel);
+        buffer.putInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            byte[] nameBytes = names.get(i);
+            Fingerprint fingerprint = fingerprints.get(i);
+            buffer.putShort((short) nameBytes.length);
+            buffer.put(nameBytes);
+            buffer.putLong(fingerprint.hash);
+            buffer.putInt(fingerprint.crc);
+            buffer.putInt(fingerprint.size);
+        }
+        buffer.flip();
+
+        Path path = persistPath.toAbsolutePath();
+        Path tmpPath = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        try {
+            Path parent = path.getParent();
+            if (Objects.nonNull(parent)) {
+                Files.createDirectories(parent);
+            }
+            try (FileChannel channel = FileChannel.open(tmpPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.error(String.format("persist class fingerprint index to '%s' error", persistPath), e);
+        }
+    }
+
+    //getter
+    public long getPatchLevel() {
+        return patchLevel;
+    }
+
+    /**
+     * @return 本进程热更新过的class数量
+     */
+    public int size() {
+        return name2Fingerprint.size();
+    }
+
+    /**
+     * @return 从持久化文件加载的历史class数量
+     */
+    public int historySize() {
+        return history.size();
+    }
+
+    /**
+     * 某个目标class loader的class指纹索引
+     */
+    private static final class LoaderIndex {
+        /** key -> class name, value -> class指纹 */
+        private final Map<String, Fingerprint> name2Fingerprint = new ConcurrentHashMap<>();
+        /** key -> class文件内容hash, value -> class name */
+        private final Map<Long, String> hash2Name = new ConcurrentHashMap<>();
+
+        private void put(String className, Fingerprint fingerprint) {
+            Fingerprint old = name2Fingerprint.put(className, fingerprint);
+            if (Objects.nonNull(old)) {
+                hash2Name.remove(old.hash, className);
+            }
+            hash2Name.put(fingerprint.hash, className);
+        }
+
+        private void remove(String className) {
+            Fingerprint old = name2Fingerprint.remove(className);
+            if (Objects.nonNull(old)) {
+                hash2Name.remove(old.hash, className);
+            }
+        }
+    }
+
+    /**
+     * class指纹
+     */
+    public static final class Fingerprint {
+        /** class文件内容hash */
+        private final long hash;
+        /** class文件内容crc32 */
+        private final int crc;
+        /** class文件大小 */
+        private final int size;
+
+        public Fingerprint(long hash, int crc, int size) {
+            this.hash = hash;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        //getter
+        public long getHash() {
+            return hash;
+        }
+
+        public int getCrc() {
+            return crc;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return "Fingerprint{" +
+                    "hash=" + Long.toHexString(hash) +
+                    ", crc=" + Integer.toHexString(crc) +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+}
@@ -1,10 +1,9 @@
 package org.kin.framework.hotswap.jclass;
 
-import com.sun.tools.attach.VirtualMachine;
-import com.sun.tools.classfile.ClassFile;
-import com.sun.tools.classfile.ConstantPoolException;
-import org.kin.agent.JavaDynamicAgent;
-import org.kin.framework.collection.Tuple;
+import org.kin.framework.hotswap.HotswapPhase;
+import org.kin.framework.hotswap.HotswapStatistics;
+import org.kin.framework.hotswap.PhaseStats;
+import org.kin.framework.hotswap.XxHash64;
 import org.kin.framework.utils.CollectionUtils;
 import org.kin.framework.utils.ExceptionUtils;
 import org.kin.framework.utils.SysUtils;
@@ -13,17 +12,24 @@ import org.slf4j.LoggerFactory;
 
 import javax.management.*;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.instrument.ClassDefinition;
+import java.lang.instrument.Instrumentation;
 import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -38,6 +44,20 @@ public final class ClassHotswap implements ClassHotswapMBean {
     private static final String CLASS_SUFFIX = ".class";
     /** zip压缩包后缀 */
     private static final String ZIP_SUFFIX = ".zip";
+    /** zip包内热更新配置 */
+    private static final String PATCH_PROPERTIES = "META-INF/hotswap.properties";
+    /** 热更新配置中, 目标class loader类名的key, 仅能匹配唯一一个class loader */
+    private static final String PATCH_CLASS_LOADER = "classLoader";
+    /** 热更新配置中, 目标class loader定义的某个类的类名的key, 以该类的class loader为目标, 优先于{@link #PATCH_CLASS_LOADER} */
+    private static final String PATCH_CLASS_LOADER_OF = "classLoaderOf";
+    /** 内存中热更新内容的虚拟路径 */
+    private static final String MEMORY_PATH = "memory";
+    /** class文件魔数 */
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+    /** zip local file header魔数, 即PK\3\4 */
+    private static final int ZIP_MAGIC = 0x504B0304;
+    /** 空zip包的end of central directory魔数, 即PK\5\6 */
+    private static final int EMPTY_ZIP_MAGIC = 0x504B0506;
     /**
      * 热更class文件放另外一个目录
      * 开发者指定, 也可以走配置
@@ -47,8 +67,26 @@ public final class ClassHotswap implements ClassHotswapMBean {
      * java agent jar路径
      */
     public static final String AGENT_PATH;
+    /**
+     * class指纹索引持久化文件路径, 为空则不持久化
+     */
+    public static final String FINGERPRINT_PATH;
+    /** 准备阶段并行度 */
+    private static final int PARALLELISM;
+    /** class文件数量达到该阈值才并行解析, 数量太少, 并行反而得不偿失 */
+    private static final int PARALLEL_THRESHOLD;
+    /** 准备阶段并行解析class文件的线程池, 有界, 不影响common pool */
+    private static final ForkJoinPool PREPARE_POOL;
     /** 热加载过的class文件信息, key -> class name */
-    private final Map<String, ClassFileInfo> name2ClassFileInfo = new HashMap<>();
+    private final Map<String, ClassFileInfo> name2ClassFileInfo = new ConcurrentHashMap<>();
+    /** 已热更新class的指纹索引 */
+    private final ClassFingerprintIndex fingerprintIndex;
+    /** 类热更新后的预热阶段 */
+    private final ClassWarmup classWarmup = new ClassWarmup();
+    /** 开启分批redefine时, 记录已redefine类的当前字节码, 用于回滚 */
+    private final Map<Class<?>, byte[]> redefinedBytes = Collections.synchronizedMap(new WeakHashMap<>());
+    /** 已加载类索引, 首次热更新时构建 */
+    private volatile LoadedClassIndex loadedClassIndex;
 
     static {
         CLASSPATH = SysUtils.getSysProperty("kin.hotswap.classpath", "hotswap/classes");
@@ -56,6 +94,14 @@ public final class ClassHotswap implements ClassHotswapMBean {
 
         AGENT_PATH = SysUtils.getSysProperty("kin.hotswap.agent.dir", "hotswap/").concat("kin-java-agent.jar");
         log.info("java agent:jarPath:{}", AGENT_PATH);
+
+        FINGERPRINT_PATH = SysUtils.getSysProperty("kin.hotswap.fingerprint.file", "");
+        log.info("java agent:fingerprintPath:{}", FINGERPRINT_PATH);
+
+        PARALLELISM = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.parallelism", String.valueOf(SysUtils.CPU_NUM)));
+        PARALLEL_THRESHOLD = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.parallelThreshold", "64"));
+        PREPARE_POOL = new ForkJoinPool(Math.max(PARALLELISM, 1));
+        log.info("java agent:prepare parallelism:{}, threshold:{}", PARALLELISM, PARALLEL_THRESHOLD);
     }
 
     /** 单例 */
@@ -74,6 +120,7 @@ public final class ClassHotswap implements ClassHotswapMBean {
     }
 
     private ClassHotswap() {
+        fingerprintIndex = new ClassFingerprintIndex(!FINGERPRINT_PATH.trim().isEmpty() ? Paths.get(FINGERPRINT_PATH) : null);
         initMBean();
     }
 
@@ -84,276 +131,704 @@ public final class ClassHotswap implements ClassHotswapMBean {
         try {
             MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
             ObjectName name = new ObjectName(this + ":type=JavaAgentHotswap");
-            mBeanServer.registerMBean(this, name);
+            //类名与接口名符合standard MBean命名规则, 需显式以MXBean注册, 返回值才会转换成open type
+            mBeanServer.registerMBean(new StandardMBean(this, ClassHotswapMBean.class, true), name);
         } catch (MalformedObjectNameException | NotCompliantMBeanException | InstanceAlreadyExistsException | MBeanRegistrationException e) {
             ExceptionUtils.throwExt(e);
         }
     }
 
+    /**
+     * 注册类热更新后的预热任务
+     *
+     * @param target 类名, 同时匹配其内部类; 或者以.*结尾的包名, 匹配该包以及子包下所有类
+     * @param task   预热任务, 会被反复调用
+     */
+    public void registerWarmup(String target, WarmupTask task) {
+        classWarmup.register(target, task);
+    }
+
+    /**
+     * 取消注册类热更新后的预热任务
+     */
+    public void unregisterWarmup(String target, WarmupTask task) {
+        classWarmup.unregister(target, task);
+    }
+
+    /**
+     * 热更新逻辑
+     * <p>
+     * 分为三个阶段:
+     * 1. 准备阶段, 读取class文件, 过滤没有变化的class文件, 解析class name, 查找已加载的类以及结构兼容性预检, 该阶段可并行, 无需加锁,
+     * 预检发现任何不兼容, 则汇总所有不兼容项并直接失败, 不会执行redefine
+     * 2. 提交阶段, 加载新类以及redefine, 该阶段需互斥
+     * 3. 预热阶段, 可选, 执行匹配的{@link WarmupTask}, 以尽快触发JIT重新编译, 结束后才返回
+     *
+     * @return 是否热更新成功, 需要热更新详情则使用{@link #hotswapWithResult(List)}
+     */
+    public boolean hotswap(List<Path> changedPaths) {
+        return hotswapWithResult(changedPaths).isSuccess();
+    }
+
+    /**
+     * 热更新逻辑, 与{@link #hotswap(List)}一致
+     *
+     * @return 热更新结果
+     */
+    public HotswapResult hotswapWithResult(List<Path> changedPaths) {
+        return hotswap(changedPaths, null);
+    }
+
     /**
      * 热更新逻辑
+     * <p>
+     * zip包可以通过{@value #PATCH_PROPERTIES}中的{@value #PATCH_CLASS_LOADER_OF}指定目标class loader定义的某个类, 以该类的class loader为目标,
+     * 或者通过{@value #PATCH_CLASS_LOADER}指定目标class loader的类名, 匹配多个class loader则热更新失败, 两者均优先于{@code targetClassLoader}
+     *
+     * @param targetClassLoader 目标class loader, 仅redefine该class loader加载的类, 新类也在该class loader加载;
+     *                          为null则redefine所有class loader加载的同名类, 新类在context class loader加载
+     * @return 热更新结果
+     */
+    public HotswapResult hotswap(List<Path> changedPaths, ClassLoader targetClassLoader) {
+        return hotswap(zipFiles -> collectEntries(changedPaths, targetClassLoader, zipFiles));
+    }
+
+    /**
+     * 直接热更新内存中的class文件或者zip包内容, 同步执行, 无需写入{@link #CLASSPATH}再由{@link org.kin.framework.hotswap.FileMonitor}触发
+     * 根据魔数区分class文件以及zip包
+     *
+     * @param bytes class文件或者zip包内容
+     * @return 热更新结果
      */
-    public synchronized boolean hotswap(List<Path> changedPaths) {
+    public HotswapResult hotswap(byte[] bytes) {
+        return hotswap(bytes, null);
+    }
+
+    @Override
+    public String hotswapPatch(byte[] bytes) {
+        return hotswap(bytes).toString();
+    }
+
+    /**
+     * 直接热更新内存中的class文件或者zip包内容
+     *
+     * @param bytes             class文件或者zip包内容
+     * @param targetClassLoader 目标class loader, 含义与{@link #hotswap(List, ClassLoader)}一致
+     * @return 热更新结果
+     * @see #hotswap(byte[])
+     */
+    public HotswapResult hotswap(byte[] bytes, ClassLoader targetClassLoader) {
+        return hotswap(zipFiles -> collectEntries(bytes, targetClassLoader));
+    }
+
+    /**
+     * 直接热更新内存中的class文件或者zip包内容
+     * 仅读取{@code buffer}的剩余内容, 不会修改其position
+     *
+     * @param buffer            class文件或者zip包内容
+     * @param targetClassLoader 目标class loader, 含义与{@link #hotswap(List, ClassLoader)}一致
+     * @return 热更新结果
+     * @see #hotswap(byte[])
+     */
+    public HotswapResult hotswap(ByteBuffer buffer, ClassLoader targetClassLoader) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return hotswap(bytes, targetClassLoader);
+    }
+
+    /**
+     * 热更新逻辑
+     *
+     * @param collector 收集待解析的class文件
+     * @return 热更新结果
+     */
+    private HotswapResult hotswap(EntryCollector collector) {
         //开始时间
         long startTime = System.currentTimeMillis();
         log.info("hotswap start...");
+        HotswapResult result = new HotswapResult();
+        List<ZipFile> zipFiles = new ArrayList<>();
         try {
+            //获取Instrumentation, 仅首次热更新需要attach以及构建已加载类索引
+            Instrumentation instrumentation;
+            long attachStartTime = System.nanoTime();
+            try {
+                instrumentation = InstrumentationProvider.get();
+                initLoadedClassIndex(instrumentation);
+            } catch (Exception e) {
+                log.error("hotswap fail, due to get instrumentation error", e);
+                HotswapStatistics.instance().recordFailure(HotswapPhase.ATTACH, null, e);
+                result.fail(e);
+                return result;
+            }
+            long attachEndTime = System.nanoTime();
+            HotswapStatistics.instance().record(HotswapPhase.ATTACH, null, attachEndTime - attachStartTime);
+            result.setAttachCostMs(TimeUnit.NANOSECONDS.toMillis(attachEndTime - attachStartTime));
+
+            List<PreparedClass> preparedClasses;
+            try {
+                List<ClassFileEntry> entries = collector.collect(zipFiles);
+                preparedClasses = prepare(entries);
+            } catch (Exception e) {
+                log.error("hotswap fail, due to parse class file error", e);
+                result.fail(e);
+                return result;
+            }
+
             //key -> class name, value -> 该类class文件信息
-            Map<String, ClassFileInfo> name2ClassFileInfo = new HashMap<>(changedPaths.size());
-            //新类和其class文件内容
-            List<Tuple<String, byte[]>> newClassNameAndBytesList = new ArrayList<>(changedPaths.size());
+            Map<String, ClassFileInfo> name2ClassFileInfo = new LinkedHashMap<>(preparedClasses.size());
+            //key -> 目标class loader, value -> 热更新到该class loader的class文件信息
+            Map<ClassLoader, List<ClassFileInfo>> loader2ClassFileInfos = new HashMap<>();
+            //新类
+            List<PreparedClass> newClasses = new ArrayList<>(preparedClasses.size());
             //待热更新的class定义
-            List<ClassDefinition> classDefinitions = new ArrayList<>(changedPaths.size());
-            ByteArrayOutputStream baos = null;
-            try {
-                for (Path changedPath : changedPaths) {
-                    //文件路径
-                    String filePath = changedPath.toString();
-                    try {
-                        if (Files.isDirectory(changedPath) ||
-                                Files.isHidden(changedPath) ||
-                                !Files.isReadable(changedPath)) {
-                            //过滤目录, 隐藏文件, 不可读文件
-                            continue;
-                        }
-
-                        String changedFileName = changedPath.getFileName().toString();
-                        if (!changedFileName.endsWith(CLASS_SUFFIX) && !changedFileName.endsWith(ZIP_SUFFIX)) {
-                            //只允许.class和.zip
-                            continue;
-                        }
-
-                        long fileLastModifiedMs = Files.getLastModifiedTime(changedPath).toMillis();
-
-                        if (changedFileName.endsWith(ZIP_SUFFIX)) {
-                            if (Objects.isNull(baos)) {
-                                //default 64k
-                                baos = new ByteArrayOutputStream(65536);
-                            } else {
-                                //复用前先reset
-                                baos.reset();
-                            }
-                            parseZip(changedPath, baos, name2ClassFileInfo, classDefinitions, newClassNameAndBytesList);
-                        } else {
-                            byte[] bytes = Files.readAllBytes(changedPath);
-                            parseClassFile(filePath, fileLastModifiedMs, bytes, name2ClassFileInfo, classDefinitions, newClassNameAndBytesList);
-                        }
-                    } catch (Exception e) {
-                        log.error(String.format("file '%s' parse error, hotswap fail", filePath), e);
-                        return false;
-                    }
-                }
-            } finally {
-                if (Objects.nonNull(baos)) {
-                    try {
-                        baos.close();
-                    } catch (IOException e) {
-                        log.error("", e);
+            List<ClassDefinition> classDefinitions = new ArrayList<>(preparedClasses.size());
+            Collection<PreparedClass> dedupPreparedClasses = dedup(preparedClasses);
+
+            //预检结果
+            List<PreflightReport> preflightReports = preflightReports(dedupPreparedClasses, false);
+            result.setPreflightReports(preflightReports);
+            ClassHotswapException incompatible = incompatible(preflightReports);
+            if (Objects.nonNull(incompatible)) {
+                log.error("hotswap fail, due to preflight check fail", incompatible);
+                result.fail(incompatible);
+                return result;
+            }
+
+            for (PreparedClass preparedClass : dedupPreparedClasses) {
+                ClassFileInfo cfi = preparedClass.classFileInfo;
+                name2ClassFileInfo.put(cfi.getClassName(), cfi);
+                loader2ClassFileInfos.computeIfAbsent(preparedClass.targetClassLoader, k -> new ArrayList<>()).add(cfi);
+                if (!preparedClass.loadedClasses.isEmpty()) {
+                    for (Class<?> loadedClass : preparedClass.loadedClasses) {
+                        classDefinitions.add(new ClassDefinition(loadedClass, preparedClass.bytes));
                     }
+                } else {
+                    newClasses.add(preparedClass);
                 }
             }
+            long prepareEndTime = System.currentTimeMillis();
+            long prepareCostMs = prepareEndTime - startTime - result.getAttachCostMs();
+            result.setPrepareCostMs(prepareCostMs);
+            log.info("hotswap prepare {} class files cost {} ms", preparedClasses.size(), prepareCostMs);
 
-            // 当前进程pid
-            String name = ManagementFactory.getRuntimeMXBean().getName();
-            String pid = name.split("@")[0];
-            log.debug("now pid is '{}'", pid);
+            synchronized (this) {
+                commit(instrumentation, name2ClassFileInfo, loader2ClassFileInfos, classDefinitions, newClasses, result);
+            }
 
-            // 虚拟机加载
-            VirtualMachine vm = null;
-            try {
-                vm = VirtualMachine.attach(pid);
-                //JavaDynamicAgent所在的jar包
-                //app jar包与agent jar包同一路径
-                vm.loadAgent(AGENT_PATH);
+            if (result.isSuccess() && !classWarmup.isEmpty()) {
+                //预热, 无需加锁
+                long warmupStartTime = System.currentTimeMillis();
+                List<String> classNames = new ArrayList<>(result.getRedefinedClassNames());
+                classNames.addAll(result.getNewClassNames());
+                result.setWarmupReports(classWarmup.warmup(classNames));
+                long warmupEndTime = System.currentTimeMillis();
+                result.setWarmupCostMs(warmupEndTime - warmupStartTime);
+                log.info("hotswap warmup cost {} ms", warmupEndTime - warmupStartTime);
+            }
+            return result;
+        } finally {
+            for (ZipFile zipFile : zipFiles) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    log.error("", e);
+                }
+            }
+            //结束时间
+            long endTime = System.currentTimeMillis();
+            result.setTotalCostMs(endTime - startTime);
+            log.info("...hotswap finish, cost {} ms", endTime - startTime);
+        }
+    }
 
-                //先加载新类
-                loadNewClass(newClassNameAndBytesList);
+    /**
+     * 预检, 仅执行准备阶段, 不会加载新类以及redefine, 用于热更新前确认class文件是否可以redefine
+     * 与{@link #hotswap(List, ClassLoader)}一样, 会过滤内容没有变化的class文件
+     *
+     * @param targetClassLoader 目标class loader, 为null则检查所有class loader加载的同名类
+     * @return 所有待redefine类的预检结果, 不包括新类
+     */
+    public List<PreflightReport> preflight(List<Path> changedPaths, ClassLoader targetClassLoader) throws Exception {
+        Instrumentation instrumentation = InstrumentationProvider.get();
+        initLoadedClassIndex(instrumentation);
 
-                //重新定义类
-                JavaDynamicAgent.getInstrumentation().redefineClasses(classDefinitions.toArray(new ClassDefinition[0]));
+        List<ZipFile> zipFiles = new ArrayList<>();
+        try {
+            List<ClassFileEntry> entries = collectEntries(changedPaths, targetClassLoader, zipFiles);
+            return preflightReports(dedup(prepare(entries)), true);
+        } finally {
+            for (ZipFile zipFile : zipFiles) {
+                try {
+                    zipFile.close();
+                } catch (IOException e) {
+                    log.error("", e);
+                }
+            }
+        }
+    }
 
-                //更新元数据
-                this.name2ClassFileInfo.putAll(name2ClassFileInfo);
+    /**
+     * 同一批次中同一目标class loader的同名class, 以后面的为准
+     *
+     * @param preparedClasses 准备阶段解析结果, 没有变化的class文件则为null
+     * @return 去重后的解析结果
+     */
+    private Collection<PreparedClass> dedup(List<PreparedClass> preparedClasses) {
+        //key -> [class name, 目标class loader]
+        Map<List<Object>, PreparedClass> name2PreparedClass = new LinkedHashMap<>(preparedClasses.size());
+        for (PreparedClass preparedClass : preparedClasses) {
+            if (Objects.nonNull(preparedClass)) {
+                name2PreparedClass.put(Arrays.asList(preparedClass.classFileInfo.getClassName(), preparedClass.targetClassLoader), preparedClass);
+            }
+        }
+        return name2PreparedClass.values();
+    }
 
-                //success log
-                for (Tuple<String, byte[]> tuple : newClassNameAndBytesList) {
-                    log.info("load new class '{}' success", tuple.first());
+    /**
+     * 汇总预检结果
+     *
+     * @param all true则返回所有预检结果, 否则仅返回存在不兼容项或者警告项的预检结果
+     */
+    private List<PreflightReport> preflightReports(Collection<PreparedClass> preparedClasses, boolean all) {
+        List<PreflightReport> reports = new ArrayList<>();
+        for (PreparedClass preparedClass : preparedClasses) {
+            for (PreflightReport report : preparedClass.preflightReports) {
+                if (all || !report.isCompatible() || !report.getWarnings().isEmpty()) {
+                    reports.add(report);
                 }
+            }
+        }
+        return reports;
+    }
 
+    /**
+     * @return 所有不兼容项汇总成的异常, 全部兼容则返回null
+     */
+    private ClassHotswapException incompatible(List<PreflightReport> reports) {
+        StringBuilder sb = new StringBuilder();
+        int incompatibleCount = 0;
+        for (PreflightReport report : reports) {
+            if (report.isCompatible()) {
+                continue;
+            }
+            incompatibleCount++;
+            HotswapStatistics.instance().recordFailure(HotswapPhase.PREFLIGHT, report.getClassName(),
+                    new ClassHotswapException(report.getErrors().toString()));
+            sb.append(System.lineSeparator())
+                    .append(String.format("file '%s' can not redefine class '%s' of class loader '%s', due to %s",
+                            report.getFilePath(), report.getClassName(), report.getClassLoader(), report.getErrors()));
+        }
+        if (incompatibleCount == 0) {
+            return null;
+        }
+        return new ClassHotswapException(String.format("%d classes are incompatible with loaded classes:%s", incompatibleCount, sb));
+    }
+
+    /**
+     * 构建已加载类索引
+     */
+    private void initLoadedClassIndex(Instrumentation instrumentation) {
+        if (Objects.nonNull(loadedClassIndex)) {
+            return;
+        }
+        synchronized (this) {
+            if (Objects.isNull(loadedClassIndex)) {
+                loadedClassIndex = new LoadedClassIndex(instrumentation);
+            }
+        }
+    }
+
+    /**
+     * 提交阶段, 加载新类以及redefine
+     *
+     * @param instrumentation       {@link Instrumentation}实例
+     * @param name2ClassFileInfo    新的热加载过的class文件信息
+     * @param loader2ClassFileInfos 按目标class loader分组的新的热加载过的class文件信息
+     * @param classDefinitions      待热更新的class定义
+     * @param newClasses            新类
+     * @param result                热更新结果
+     */
+    private void commit(Instrumentation instrumentation,
+                        Map<String, ClassFileInfo> name2ClassFileInfo,
+                        Map<ClassLoader, List<ClassFileInfo>> loader2ClassFileInfos,
+                        List<ClassDefinition> classDefinitions,
+                        List<PreparedClass> newClasses,
+                        HotswapResult result) {
+        HotswapStatistics statistics = HotswapStatistics.instance();
+        //当前所处阶段, 用于统计失败
+        HotswapPhase phase = HotswapPhase.DEFINE;
+        try {
+            //先加载新类
+            long defineStartTime = System.nanoTime();
+            loadNewClass(newClasses);
+            long defineEndTime = System.nanoTime();
+            if (!newClasses.isEmpty()) {
+                statistics.record(HotswapPhase.DEFINE, null, defineEndTime - defineStartTime);
+            }
+
+            //重新定义类
+            phase = HotswapPhase.REDEFINE;
+            if (ChunkedRedefiner.ENABLED && classDefinitions.size() > 1) {
+                //分批redefine, 失败会回滚已redefine的批次
+                new ChunkedRedefiner(instrumentation, redefinedBytes).redefine(classDefinitions, result);
+            } else {
+                instrumentation.redefineClasses(classDefinitions.toArray(new ClassDefinition[0]));
+                if (!classDefinitions.isEmpty()) {
+                    long redefineCostNanos = System.nanoTime() - defineEndTime;
+                    statistics.record(HotswapPhase.REDEFINE, null, redefineCostNanos);
+                    result.setRedefineChunks(1);
+                    result.setMaxRedefinePauseMs(TimeUnit.NANOSECONDS.toMillis(redefineCostNanos));
+                }
+            }
+            long redefineEndTime = System.nanoTime();
+            if (ChunkedRedefiner.ENABLED) {
                 for (ClassDefinition classDefinition : classDefinitions) {
-                    log.info("redefine loaded class '{}' success", classDefinition.getDefinitionClass().getName());
+                    redefinedBytes.put(classDefinition.getDefinitionClass(), classDefinition.getDefinitionClassFile());
                 }
+            }
+            result.setDefineCostMs(TimeUnit.NANOSECONDS.toMillis(defineEndTime - defineStartTime));
+            result.setRedefineCostMs(TimeUnit.NANOSECONDS.toMillis(redefineEndTime - defineEndTime));
+            log.info("hotswap attach cost {} ms, load new class cost {} ms, redefine cost {} ms",
+                    result.getAttachCostMs(), result.getDefineCostMs(), result.getRedefineCostMs());
+            phase = null;
+
+            //更新元数据
+            this.name2ClassFileInfo.putAll(name2ClassFileInfo);
+            fingerprintIndex.update(loader2ClassFileInfos);
+
+            //success log
+            for (PreparedClass newClass : newClasses) {
+                String className = newClass.classFileInfo.getClassName();
+                result.addNewClassName(className);
+                log.info("load new class '{}' success", className);
+            }
 
-                //删除热更类文件
-                Path rootPath = Paths.get(CLASSPATH);
-                Files.list(rootPath).forEach(childpath -> {
-                    try {
-                        Files.deleteIfExists(childpath);
-                    } catch (IOException e) {
-                        ExceptionUtils.throwExt(e);
-                    }
-                });
-                return true;
-            } catch (Exception e) {
-                log.error("hotswap fail, due to", e);
-            } finally {
-                if (vm != null) {
-                    try {
-                        vm.detach();
-                    } catch (IOException e) {
-                        ExceptionUtils.throwExt(e);
+            for (ClassDefinition classDefinition : classDefinitions) {
+                Class<?> definitionClass = classDefinition.getDefinitionClass();
+                String className = definitionClass.getName();
+                result.addRedefinedClassName(className);
+                log.info("redefine loaded class '{}' of class loader '{}' success", className, definitionClass.getClassLoader());
+            }
+
+            result.success();
+        } catch (Exception | LinkageError e) {
+            //redefine时字节码校验失败会抛出VerifyError, ClassFormatError等
+            log.error("hotswap fail, due to", e);
+            if (Objects.nonNull(phase)) {
+                statistics.recordFailure(phase, null, e);
+            }
+            result.fail(e);
+        }
+    }
+
+    /**
+     * 收集待解析的class文件, 包括独立的class文件以及zip包内的class文件
+     * zip包基于{@link ZipFile}随机读取zip central directory, 仅读取entry元数据, 不解压
+     * <p>
+     * 之所以需要打包成zip, 因为想批量redefine, 这样子可以保证同时热更新成功, 或者同时热更新失败, 不会污染运行时环境
+     * 不打包成zip, 有可能因为网络传输延迟, 想要热更新的class文件, 分批到达, 这样子框架会认为是多次热更新, 这样子无法达到预期效果, 还很有可能污染运行时环境
+     *
+     * @param changedPaths      变化的文件路径
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     * @param zipFiles          打开的zip包, 热更新结束后需关闭
+     * @return 待解析的class文件
+     */
+    private List<ClassFileEntry> collectEntries(List<Path> changedPaths, ClassLoader targetClassLoader, List<ZipFile> zipFiles) throws IOException {
+        List<ClassFileEntry> entries = new ArrayList<>(changedPaths.size());
+        for (Path changedPath : changedPaths) {
+            if (Files.isDirectory(changedPath) ||
+                    Files.isHidden(changedPath) ||
+                    !Files.isReadable(changedPath)) {
+                //过滤目录, 隐藏文件, 不可读文件
+                continue;
+            }
+
+            String changedFileName = changedPath.getFileName().toString();
+            if (changedFileName.endsWith(CLASS_SUFFIX)) {
+                entries.add(ClassFileEntry.file(changedPath, targetClassLoader));
+            } else if (changedFileName.endsWith(ZIP_SUFFIX)) {
+                String separator = changedPath.getFileSystem().getSeparator();
+                //模拟uri的路径格式
+                String zipFilePath = changedPath + "!" + separator;
+                ZipFile zipFile = new ZipFile(changedPath.toFile());
+                zipFiles.add(zipFile);
+                ClassLoader zipTargetClassLoader = patchTargetClassLoader(zipFile, targetClassLoader);
+                Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if (zipEntry.isDirectory() || !zipEntry.getName().endsWith(CLASS_SUFFIX)) {
+                        //过滤目录以及非class文件
+                        continue;
                     }
+                    entries.add(ClassFileEntry.zipEntry(zipFilePath, zipFile, zipEntry, zipTargetClassLoader));
                 }
             }
-        } finally {
-            //结束时间
-            long endTime = System.currentTimeMillis();
-            log.info("...hotswap finish, cost {} ms", endTime - startTime);
+            //只允许.class和.zip
         }
+        return entries;
+    }
 
-        return false;
+    /**
+     * 收集内存中的class文件或者zip包内的class文件
+     * zip包基于{@link ZipInputStream}顺序解压
+     *
+     * @param bytes             class文件或者zip包内容
+     * @param targetClassLoader 目标class loader, 为null则不指定
+     * @return 待解析的class文件
+     */
+    private List<ClassFileEntry> collectEntries(byte[] bytes, ClassLoader targetClassLoader) throws IOException {
+        int magic = bytes.length >= 4 ? ByteBuffer.wrap(bytes).getInt() : 0;
+        if (magic == CLASS_MAGIC) {
+            return Collections.singletonList(ClassFileEntry.memory(MEMORY_PATH + CLASS_SUFFIX, bytes, targetClassLoader));
+        }
+        if (magic != ZIP_MAGIC && magic != EMPTY_ZIP_MAGIC) {
+            throw new ClassHotswapException(String.format("unknown content with magic 0x%08X, neither class file nor zip", magic));
+        }
+
+        //模拟uri的路径格式
+        String zipFilePath = MEMORY_PATH + ZIP_SUFFIX + "!/";
+        //key -> zip entry name, value -> class文件内容
+        Map<String, byte[]> name2Bytes = new LinkedHashMap<>();
+        Properties properties = null;
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(bytes))) {
+            ZipEntry zipEntry;
+            while (Objects.nonNull(zipEntry = zis.getNextEntry())) {
+                String name = zipEntry.getName();
+                if (PATCH_PROPERTIES.equals(name)) {
+                    properties = new Properties();
+                    properties.load(zis);
+                } else if (!zipEntry.isDirectory() && name.endsWith(CLASS_SUFFIX)) {
+                    name2Bytes.put(name, ClassFileEntry.readAll(zis));
+                }
+                //过滤目录以及非class文件
+            }
+        }
+
+        //zip entry顺序不确定, 解压完才能确定目标class loader
+        ClassLoader zipTargetClassLoader = patchTargetClassLoader(zipFilePath, properties, targetClassLoader);
+        List<ClassFileEntry> entries = new ArrayList<>(name2Bytes.size());
+        for (Map.Entry<String, byte[]> entry : name2Bytes.entrySet()) {
+            entries.add(ClassFileEntry.memory(zipFilePath + entry.getKey(), entry.getValue(), zipTargetClassLoader));
+        }
+        return entries;
     }
 
     /**
-     * 解析class文件, 根据规则过滤并将合法的class文件内容转换成{@link ClassDefinition}实例, 并添加到{@code classDefinitions}
-     * 如果是新类, 则添加到{@code newClassNameAndBytesList}
+     * 读取zip包内{@value #PATCH_PROPERTIES}指定的目标class loader
      *
-     * @param classFilePath            class文件路径
-     * @param classFileLastModifiedMs  class文件上次修改时间
-     * @param bytes                    class文件内容
-     * @param name2ClassFileInfo       新的热加载过的class文件信息
-     * @param classDefinitions         待热更新的class定义
-     * @param newClassNameAndBytesList 新类和其class文件内容
+     * @param defaultClassLoader 没有指定时使用的class loader
      */
-    private void parseClassFile(String classFilePath, long classFileLastModifiedMs,
-                                byte[] bytes,
-                                Map<String, ClassFileInfo> name2ClassFileInfo,
-                                List<ClassDefinition> classDefinitions,
-                                List<Tuple<String, byte[]>> newClassNameAndBytesList) throws ConstantPoolException, IOException {
-        log.info("file '{}' checking...", classFilePath);
+    private ClassLoader patchTargetClassLoader(ZipFile zipFile, ClassLoader defaultClassLoader) throws IOException {
+        ZipEntry propertiesEntry = zipFile.getEntry(PATCH_PROPERTIES);
+        if (Objects.isNull(propertiesEntry)) {
+            return defaultClassLoader;
+        }
 
-        //从class文件字节码中读取className
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
-        ClassFile cf = ClassFile.read(dis);
-        String className = cf.getName().replaceAll("/", "\\.");
-        dis.close();
-
-        //原class文件信息
-        ClassFileInfo old = this.name2ClassFileInfo.get(className);
-        //过滤没有变化的文件(通过文件修改时间)
-        if (old != null && old.getLastModifyTime() == classFileLastModifiedMs) {
-            log.info("file '{}' is ignored, because it's file modified time is not changed", classFilePath);
-            return;
+        Properties properties = new Properties();
+        try (InputStream is = zipFile.getInputStream(propertiesEntry)) {
+            properties.load(is);
         }
+        return patchTargetClassLoader(zipFile.getName(), properties, defaultClassLoader);
+    }
 
-        //封装成class文件信息
-        ClassFileInfo cfi = new ClassFileInfo(classFilePath, className, bytes, classFileLastModifiedMs);
-        //检查类名
-        if (old != null && !old.getClassName().equals(cfi.getClassName())) {
-            log.info("file '{}' is ignored, because it's class name is not the same with the origin", classFilePath);
-            return;
+    /**
+     * 根据{@value #PATCH_PROPERTIES}内容获取目标class loader
+     *
+     * @param zipName            zip包路径, 用于异常信息
+     * @param properties         {@value #PATCH_PROPERTIES}内容, 为null则没有配置
+     * @param defaultClassLoader 没有指定时使用的class loader
+     */
+    private ClassLoader patchTargetClassLoader(String zipName, Properties properties, ClassLoader defaultClassLoader) {
+        if (Objects.isNull(properties)) {
+            return defaultClassLoader;
+        }
+        String className = properties.getProperty(PATCH_CLASS_LOADER_OF, "").trim();
+        if (!className.isEmpty()) {
+            Set<ClassLoader> classLoaders = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Class<?> loadedClass : loadedClassIndex.find(className, null)) {
+                classLoaders.add(loadedClass.getClassLoader());
+            }
+            if (classLoaders.isEmpty()) {
+                throw new ClassHotswapException(String.format("zip '%s' target class loader of '%s' not found, class is not loaded", zipName, className));
+            }
+            if (classLoaders.size() > 1) {
+                throw new ClassHotswapException(String.format("zip '%s' target class loader of '%s' is ambiguous, class is loaded by %s",
+                        zipName, className, classLoaders));
+            }
+            ClassLoader classLoader = classLoaders.iterator().next();
+            if (Objects.isNull(classLoader)) {
+                throw new ClassHotswapException(String.format("zip '%s' target class loader of '%s' is bootstrap class loader, which is not supported", zipName, className));
+            }
+            return classLoader;
         }
 
-        //检查内容
-        if (old != null && !old.getMd5().equals(cfi.getMd5())) {
-            log.info("file '{}' is ignored, because it's content is not changed", classFilePath);
-            return;
+        String classLoaderClassName = properties.getProperty(PATCH_CLASS_LOADER, "").trim();
+        if (classLoaderClassName.isEmpty()) {
+            return defaultClassLoader;
+        }
+        Set<ClassLoader> classLoaders = loadedClassIndex.findClassLoaders(classLoaderClassName);
+        if (classLoaders.isEmpty()) {
+            throw new ClassHotswapException(String.format("zip '%s' target class loader '%s' not found", zipName, classLoaderClassName));
+        }
+        if (classLoaders.size() > 1) {
+            throw new ClassHotswapException(String.format("zip '%s' target class loader '%s' is ambiguous, %d instances found, use '%s' instead",
+                    zipName, classLoaderClassName, classLoaders.size(), PATCH_CLASS_LOADER_OF));
         }
+        return classLoaders.iterator().next();
+    }
 
-        log.info("file '{}' pass check, it's class name is {}", classFilePath, className);
-        name2ClassFileInfo.put(className, cfi);
+    /**
+     * 准备阶段, 解析所有class文件
+     * class文件数量达到阈值, 则在{@link #PREPARE_POOL}并行解析
+     *
+     * @param entries 待解析的class文件
+     * @return 解析结果, 与{@code entries}顺序一致, 没有变化的class文件则为null
+     */
+    private List<PreparedClass> prepare(List<ClassFileEntry> entries) throws Exception {
+        if (entries.size() < PARALLEL_THRESHOLD || PARALLELISM <= 1) {
+            List<PreparedClass> preparedClasses = new ArrayList<>(entries.size());
+            for (ClassFileEntry entry : entries) {
+                preparedClasses.add(prepare(entry));
+            }
+            return preparedClasses;
+        }
 
-        Class<?> c;
         try {
-            c = Class.forName(className);
-            classDefinitions.add(new ClassDefinition(c, bytes));
-        } catch (ClassNotFoundException e) {
-            //load不到class, 则是新类
-            newClassNameAndBytesList.add(new Tuple<>(className, bytes));
+            //在指定ForkJoinPool执行parallel stream, 则仅会使用该pool的线程
+            return PREPARE_POOL.submit(() -> entries.parallelStream()
+                    .map(this::prepareUnchecked)
+                    .collect(Collectors.toList())).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
         }
     }
 
     /**
-     * 解析zip包, 该zip包可能包含多个class文件.
-     * 之所以需要打包成zip, 因为想批量redefine, 这样子可以保证同时热更新成功, 或者同时热更新失败, 不会污染运行时环境
-     * 不打包成zip, 有可能因为网络传输延迟, 想要热更新的class文件, 分批到达, 这样子框架会认为是多次热更新, 这样子无法达到预期效果, 还很有可能污染运行时环境
+     * 用于parallel stream, 将checked exception包装成{@link ClassHotswapException}
+     */
+    private PreparedClass prepareUnchecked(ClassFileEntry entry) {
+        try {
+            return prepare(entry);
+        } catch (ClassHotswapException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClassHotswapException(String.format("file '%s' parse error", entry.getFilePath()), e);
+        }
+    }
+
+    /**
+     * 解析class文件, 根据规则过滤并将合法的class文件内容封装成{@link PreparedClass}
      *
-     * @param changedPath              包含class文件的zip路径
-     * @param baos                     复用的{@link ByteArrayOutputStream}, 单线程操作, 复用可以减少内存分配
-     * @param name2ClassFileInfo       新的热加载过的class文件信息
-     * @param classDefinitions         待热更新的class定义
-     * @param newClassNameAndBytesList 新类和其class文件内容
+     * @param entry 待解析的class文件
+     * @return 解析结果, 如果class文件没有变化, 则返回null
      */
-    private void parseZip(Path changedPath, ByteArrayOutputStream baos,
-                          Map<String, ClassFileInfo> name2ClassFileInfo,
-                          List<ClassDefinition> classDefinitions,
-                          List<Tuple<String, byte[]>> newClassNameAndBytesList) throws IOException, ConstantPoolException {
-        String separator = changedPath.getFileSystem().getSeparator();
-        //模拟uri的路径格式
-        String zipFilePath = changedPath + "!" + separator;
-
-        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(changedPath))) {
-            ZipEntry entry;
-            byte[] buffer = null;
-            while (Objects.nonNull((entry = zis.getNextEntry()))) {
-                if (entry.isDirectory()) {
-                    //过滤目录
-                    zis.closeEntry();
-                    continue;
-                }
+    private PreparedClass prepare(ClassFileEntry entry) throws IOException {
+        String classFilePath = entry.getFilePath();
+        log.info("file '{}' checking...", classFilePath);
+        HotswapStatistics statistics = HotswapStatistics.instance();
+
+        if (entry.hasCrc()) {
+            //已知crc32和大小, 则先与entry路径对应的同名class比较, 过滤没有变化的文件, 无需解压
+            String expectedClassName = entry.expectedClassName();
+            if (fingerprintIndex.containsCrc(entry.getTargetClassLoader(), expectedClassName, entry.crc(), entry.size())) {
+                log.info("file '{}' is ignored, because it's content is the same with loaded class '{}'", classFilePath, expectedClassName);
+                return null;
+            }
+        }
 
-                String fileName = entry.getName();
-                if (!fileName.endsWith(CLASS_SUFFIX)) {
-                    //过滤非class文件
-                    zis.closeEntry();
-                    continue;
-                }
-                if (Objects.isNull(buffer)) {
-                    //lazy init
-                    buffer = new byte[2048];
-                }
+        //读取class文件内容
+        long readStartTime = System.nanoTime();
+        byte[] bytes;
+        try {
+            bytes = entry.read();
+        } catch (IOException | RuntimeException e) {
+            statistics.recordFailure(HotswapPhase.READ, classFilePath, e);
+            throw e;
+        }
+        long parseStartTime = System.nanoTime();
+        statistics.record(HotswapPhase.READ, classFilePath, parseStartTime - readStartTime);
 
-                String classFilePath = zipFilePath + fileName;
-                //获取文件修改时间
-                long classFileLastModifiedMs = entry.getLastModifiedTime().toMillis();
+        try {
+            PreparedClass preparedClass = prepare(entry, bytes);
+            statistics.record(HotswapPhase.PARSE, classFilePath, System.nanoTime() - parseStartTime);
+            return preparedClass;
+        } catch (RuntimeException e) {
+            statistics.recordFailure(HotswapPhase.PARSE, classFilePath, e);
+            throw e;
+        }
+    }
 
-                //读取class文件内容
-                int len;
-                while ((len = zis.read(buffer)) > 0) {
-                    baos.write(buffer, 0, len);
-                }
+    /**
+     * 根据内容hash过滤没有变化的class文件, 解析并校验class文件
+     *
+     * @param entry 待解析的class文件
+     * @param bytes class文件内容
+     * @return 解析结果, 如果class文件没有变化, 则返回null
+     */
+    private PreparedClass prepare(ClassFileEntry entry, byte[] bytes) {
+        String classFilePath = entry.getFilePath();
+
+        //先根据内容hash过滤没有变化的文件, 无需解析class文件, 仅与热更新到同一目标class loader的class比较
+        ClassLoader targetClassLoader = entry.getTargetClassLoader();
+        long hash = XxHash64.hash(bytes);
+        String unchangedClassName = fingerprintIndex.find(targetClassLoader, hash, bytes.length);
+        if (Objects.nonNull(unchangedClassName)) {
+            log.info("file '{}' is ignored, because it's content is the same with loaded class '{}'", classFilePath, unchangedClassName);
+            return null;
+        }
+
+        //从class文件字节码中读取className
+        ClassFileParser.ClassFileHeader header = ClassFileParser.parse(bytes);
+        String className = header.getClassName();
+
+        //封装成class文件信息
+        int crc = entry.hasCrc() ? entry.crc() : ClassFileEntry.crc32(bytes);
+        ClassFileInfo cfi = new ClassFileInfo(classFilePath, className, hash, crc, bytes.length, entry.getLastModifyTime());
+        log.info("file '{}' pass check, it's class name is {}", classFilePath, className);
 
-                //解析class文件
-                parseClassFile(classFilePath, classFileLastModifiedMs, baos.toByteArray(), name2ClassFileInfo, classDefinitions, newClassNameAndBytesList);
-                //close zip entry
-                zis.closeEntry();
-                //重置
-                baos.reset();
+        //通过已加载类索引查找, 不会触发类初始化, 同时支持多个class loader
+        List<Class<?>> loadedClasses = loadedClassIndex.find(className, targetClassLoader);
+        //结构兼容性预检, 此处仅记录结果, 由调用方汇总整个批次的不兼容项
+        List<PreflightReport> preflightReports = Collections.emptyList();
+        if (!loadedClasses.isEmpty()) {
+            long preflightStartTime = System.nanoTime();
+            preflightReports = new ArrayList<>(loadedClasses.size());
+            for (Class<?> loadedClass : loadedClasses) {
+                preflightReports.add(ClassPreflight.check(classFilePath, header, loadedClass));
             }
+            HotswapStatistics.instance().record(HotswapPhase.PREFLIGHT, classFilePath, System.nanoTime() - preflightStartTime);
         }
+        //没有已加载的类, 则是新类
+        return new PreparedClass(cfi, bytes, loadedClasses, targetClassLoader, preflightReports);
     }
 
     /**
-     * 加载新类
+     * 加载新类, 指定了目标class loader则在该class loader加载, 否则在context class loader加载
      *
-     * @param newClassNameAndBytesList 新类和其class文件内容
+     * @param newClasses 新类
      */
-    private void loadNewClass(List<Tuple<String, byte[]>> newClassNameAndBytesList) throws NoSuchMethodException {
-        if (CollectionUtils.isEmpty(newClassNameAndBytesList)) {
+    private void loadNewClass(List<PreparedClass> newClasses) throws NoSuchMethodException {
+        if (CollectionUtils.isEmpty(newClasses)) {
             return;
         }
 
         //获取context class loader
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
         //基于反射, 获取class loader定义class方法
         Method defineClassCaller = ClassLoader.class.getDeclaredMethod("defineClass", String.class, byte[].class, int.class, int.class);
         if (!defineClassCaller.isAccessible()) {
             defineClassCaller.setAccessible(true);
         }
 
-        for (Tuple<String, byte[]> tuple : newClassNameAndBytesList) {
-            String className = tuple.first();
-            byte[] bytes = tuple.second();
+        for (PreparedClass newClass : newClasses) {
+            String className = newClass.classFileInfo.getClassName();
+            byte[] bytes = newClass.bytes;
+            ClassLoader classLoader = Objects.nonNull(newClass.targetClassLoader) ? newClass.targetClassLoader : contextClassLoader;
             try {
                 //load new class
                 defineClassCaller.invoke(classLoader, className, bytes, 0, bytes.length);
@@ -367,4 +842,74 @@ public final class ClassHotswap implements ClassHotswapMBean {
     public List<ClassFileInfo> getClassFileInfo() {
         return new ArrayList<>(name2ClassFileInfo.values());
     }
+
+    @Override
+    public List<String> preflight(String path) {
+        List<String> lines = new ArrayList<>();
+        try {
+            for (PreflightReport report : preflight(Collections.singletonList(Paths.get(path)), null)) {
+                lines.add(report.toString());
+            }
+        } catch (Exception e) {
+            lines.add(String.format("preflight '%s' error, due to %s", path, e));
+        }
+        return lines;
+    }
+
+    @Override
+    public long getPatchLevel() {
+        return fingerprintIndex.getPatchLevel();
+    }
+
+    @Override
+    public Map<String, PhaseStats> getPhaseStats() {
+        return HotswapStatistics.instance().getPhaseStats();
+    }
+
+    @Override
+    public List<String> getRecentFailures() {
+        return HotswapStatistics.instance().getRecentFailures();
+    }
+
+    @Override
+    public void resetStats() {
+        HotswapStatistics.instance().reset();
+    }
+
+    /**
+     * 收集待解析的class文件
+     */
+    @FunctionalInterface
+    private interface EntryCollector {
+        /**
+         * @param zipFiles 打开的zip包, 热更新结束后需关闭
+         * @return 待解析的class文件
+         */
+        List<ClassFileEntry> collect(List<ZipFile> zipFiles) throws IOException;
+    }
+
+    /**
+     * 准备阶段解析结果
+     */
+    private static final class PreparedClass {
+        /** class文件信息 */
+        private final ClassFileInfo classFileInfo;
+        /** class文件内容 */
+        private final byte[] bytes;
+        /** 已加载的类, 可能被多个class loader加载, 为空则是新类 */
+        private final List<Class<?>> loadedClasses;
+        /** 目标class loader, 为null则不指定 */
+        private final ClassLoader targetClassLoader;
+        /** 与{@link #loadedClasses}一一对应的结构兼容性预检结果 */
+        private final List<PreflightReport> preflightReports;
+
+        PreparedClass(ClassFileInfo classFileInfo, byte[] bytes, List<Class<?>> loadedClasses, ClassLoader targetClassLoader,
+                      List<PreflightReport> preflightReports) {
+            this.classFileInfo = classFileInfo;
+            this.bytes = bytes;
+            this.loadedClasses = loadedClasses;
+            this.targetClassLoader = targetClassLoader;
+            this.preflightReports = preflightReports;
+        }
+    }
 }
@@ -1,11 +1,19 @@
 package org.kin.framework.hotswap.jclass;
 
+import org.kin.framework.hotswap.PhaseStats;
+
+import javax.management.MXBean;
 import java.util.List;
+import java.util.Map;
 
 /**
+ * 以MXBean注册, 返回值会被转换成open type, 比如{@link PhaseStats}转换成{@link javax.management.openmbean.CompositeData},
+ * map转换成{@link javax.management.openmbean.TabularData}, 以便jconsole等通用JMX客户端无需依赖本项目的类即可展示
+ *
  * @author huangjianqin
  * @date 2019/3/1
  */
+@MXBean
 public interface ClassHotswapMBean {
     /**
      * 用于JMX监控
@@ -13,4 +21,47 @@ public interface ClassHotswapMBean {
      * @return 返回类信息
      */
     List<ClassFileInfo> getClassFileInfo();
+
+    /**
+     * 用于JMX直接热更新, 同步执行, 无需写入热更新目录
+     * 返回结果摘要, 以便jconsole等通用JMX客户端展示, 详细结果见{@link ClassHotswap#hotswap(byte[])}
+     *
+     * @param bytes class文件或者zip包内容
+     * @return 热更新结果摘要
+     */
+    String hotswapPatch(byte[] bytes);
+
+    /**
+     * 用于JMX预检, 仅解析class文件并检查是否可以redefine, 不会执行热更新
+     *
+     * @param path class文件或者zip包路径
+     * @return 每个待redefine类的预检结果
+     */
+    List<String> preflight(String path);
+
+    /**
+     * 用于JMX监控
+     *
+     * @return 当前补丁版本, 即成功热更新次数, 开启指纹索引持久化后重启不会丢失
+     */
+    long getPatchLevel();
+
+    /**
+     * 用于JMX监控
+     *
+     * @return 类热更新以及文件热加载各阶段的次数, 失败次数以及耗时分位数, key -> {@link org.kin.framework.hotswap.HotswapPhase}
+     */
+    Map<String, PhaseStats> getPhaseStats();
+
+    /**
+     * 用于JMX监控
+     *
+     * @return 最近的失败详情
+     */
+    List<String> getRecentFailures();
+
+    /**
+     * 重置各阶段统计
+     */
+    void resetStats();
 }
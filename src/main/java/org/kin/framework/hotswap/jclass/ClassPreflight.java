@@ -0,0 +1,228 @@
+package org.kin.framework.hotswap.jclass;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * redefine结构兼容性预检
+ * <p>
+ * 基于{@link ClassFileParser}解析出的字段以及方法签名, 与已加载类的反射信息对比, 在调用{@link java.lang.instrument.Instrumentation#redefineClasses}前
+ * 找出所有不兼容项, 而不是等虚拟机仅返回一个笼统的{@link UnsupportedOperationException}
+ * 规则与HotSpot一致:
+ * 1. 不能修改类修饰符以及继承结构
+ * 2. 不能增删字段, 不能修改字段类型以及修饰符
+ * 3. 不能修改方法修饰符, 不能增删方法; JDK13以前或者开启了-XX:+AllowRedefinitionToAddDeleteMethods, 则允许增删private static或者private final方法
+ * <p>
+ * lambda对应的合成方法(lambda$xxx$n)是private static或者private方法, 按出现顺序编号,
+ * 增删lambda会导致编号错位, 已创建的lambda实例会调用到同名的新方法体, 因此即使可以redefine, 也会给出警告
+ *
+ * @author huangjianqin
+ * @date 2022/3/14
+ */
+final class ClassPreflight {
+    private static final Logger log = LoggerFactory.getLogger(ClassPreflight.class);
+    /** lambda合成方法名前缀 */
+    private static final String LAMBDA_PREFIX = "lambda$";
+    /** 静态初始化方法, 反射获取不到, 且redefine后不会再次执行, 不参与对比 */
+    private static final String CLINIT = "<clinit>";
+    /** 构造方法 */
+    private static final String INIT = "<init>";
+    /** 需对比的类修饰符, 忽略ACC_SUPER以及ACC_SYNTHETIC */
+    private static final int CLASS_MODIFIERS = Modifier.PUBLIC | Modifier.FINAL | Modifier.INTERFACE | Modifier.ABSTRACT | 0x2000 | 0x4000;
+    /** 需对比的字段修饰符 */
+    private static final int FIELD_MODIFIERS = Modifier.PUBLIC | Modifier.PRIVATE | Modifier.PROTECTED | Modifier.STATIC |
+            Modifier.FINAL | Modifier.VOLATILE | Modifier.TRANSIENT;
+    /** 需对比的方法修饰符, 忽略ACC_BRIDGE, ACC_VARARGS以及ACC_STRICT(高版本javac不再生成) */
+    private static final int METHOD_MODIFIERS = Modifier.PUBLIC | Modifier.PRIVATE | Modifier.PROTECTED | Modifier.STATIC |
+            Modifier.FINAL | Modifier.SYNCHRONIZED | Modifier.NATIVE | Modifier.ABSTRACT;
+
+    /** 是否允许增删private static或者private final方法 */
+    private static final boolean ALLOW_ADD_DELETE_METHODS = allowAddDeleteMethods();
+
+    private ClassPreflight() {
+    }
+
+    /**
+     * JDK13开始, HotSpot默认不再允许redefine时增删private方法, 除非开启-XX:+AllowRedefinitionToAddDeleteMethods
+     */
+    private static boolean allowAddDeleteMethods() {
+        String specVersion = System.getProperty("java.specification.version", "");
+        if (specVersion.startsWith("1.") || Integer.parseInt(specVersion) < 13) {
+            return true;
+        }
+        try {
+            HotSpotDiagnosticMXBean diagnosticMXBean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(diagnosticMXBean.getVMOption("AllowRedefinitionToAddDeleteMethods").getValue());
+        } catch (Exception | LinkageError e) {
+            //非HotSpot虚拟机或者没有该参数
+            log.debug("can not get vm option 'AllowRedefinitionToAddDeleteMethods'", e);
+            return false;
+        }
+    }
+
+    /**
+     * 对比新class文件与已加载类
+     *
+     * @param filePath    class文件路径
+     * @param header      新class文件解析结果
+     * @param loadedClass 已加载类
+     * @return 预检结果
+     */
+    static PreflightReport check(String filePath, ClassFileParser.ClassFileHeader header, Class<?> loadedClass) {
+        List<String> errors = new ArrayList<>(0);
+        List<String> warnings = new ArrayList<>(0);
+
+        String hierarchyChanged = header.checkHierarchy(loadedClass);
+        if (Objects.nonNull(hierarchyChanged)) {
+            errors.add(hierarchyChanged);
+        }
+        //内部类的Class#getModifiers()取自InnerClasses属性, 与class文件的access flags不一致, 仅对比顶层类
+        if (header.getClassName().indexOf('$') < 0 &&
+                (header.getAccessFlags() & CLASS_MODIFIERS) != (loadedClass.getModifiers() & CLASS_MODIFIERS)) {
+            errors.add(String.format("class modifiers changed, '%s' -> '%s'",
+                    Modifier.toString(loadedClass.getModifiers() & CLASS_MODIFIERS), Modifier.toString(header.getAccessFlags() & CLASS_MODIFIERS)));
+        }
+
+        try {
+            checkFields(header, loadedClass, errors);
+            checkMethods(header, loadedClass, errors, warnings);
+        } catch (LinkageError e) {
+            //反射时字段或者方法签名中的类无法加载
+            warnings.add(String.format("can not reflect fields or methods of loaded class, due to %s", e));
+        }
+
+        return new PreflightReport(filePath, header.getClassName(), String.valueOf(loadedClass.getClassLoader()), errors, warnings);
+    }
+
+    /**
+     * 对比字段
+     */
+    private static void checkFields(ClassFileParser.ClassFileHeader header, Class<?> loadedClass, List<String> errors) {
+        //key -> name + descriptor, value -> modifiers
+        Map<String, Integer> loadedFields = new LinkedHashMap<>();
+        for (Field field : loadedClass.getDeclaredFields()) {
+            loadedFields.put(field.getName() + ":" + descriptor(field.getType()), field.getModifiers());
+        }
+
+        for (ClassFileParser.Member field : header.getFields()) {
+            String key = field.getName() + ":" + field.getDescriptor();
+            Integer loadedModifiers = loadedFields.remove(key);
+            if (Objects.isNull(loadedModifiers)) {
+                errors.add(String.format("field '%s' added", key));
+            } else if ((loadedModifiers & FIELD_MODIFIERS) != (field.getAccessFlags() & FIELD_MODIFIERS)) {
+                errors.add(String.format("field '%s' modifiers changed, '%s' -> '%s'", key,
+                        Modifier.toString(loadedModifiers & FIELD_MODIFIERS), Modifier.toString(field.getAccessFlags() & FIELD_MODIFIERS)));
+            }
+        }
+        for (String key : loadedFields.keySet()) {
+            errors.add(String.format("field '%s' removed", key));
+        }
+    }
+
+    /**
+     * 对比方法以及构造方法
+     */
+    private static void checkMethods(ClassFileParser.ClassFileHeader header, Class<?> loadedClass, List<String> errors, List<String> warnings) {
+        //key -> name + descriptor, value -> modifiers
+        Map<String, Integer> loadedMethods = new LinkedHashMap<>();
+        for (Method method : loadedClass.getDeclaredMethods()) {
+            loadedMethods.put(method.getName() + descriptor(method.getParameterTypes(), method.getReturnType()), method.getModifiers());
+        }
+        for (Constructor<?> constructor : loadedClass.getDeclaredConstructors()) {
+            loadedMethods.put(INIT + descriptor(constructor.getParameterTypes(), void.class), constructor.getModifiers());
+        }
+
+        for (ClassFileParser.Member method : header.getMethods()) {
+            if (CLINIT.equals(method.getName())) {
+                continue;
+            }
+            String key = method.getName() + method.getDescriptor();
+            Integer loadedModifiers = loadedMethods.remove(key);
+            if (Objects.isNull(loadedModifiers)) {
+                if (!canAddOrDelete(method.getAccessFlags())) {
+                    errors.add(String.format("method '%s' added", key));
+                } else if (method.getName().startsWith(LAMBDA_PREFIX)) {
+                    warnings.add(String.format("lambda method '%s' added", key));
+                }
+            } else if ((loadedModifiers & METHOD_MODIFIERS) != (method.getAccessFlags() & METHOD_MODIFIERS)) {
+                errors.add(String.format("method '%s' modifiers changed, '%s' -> '%s'", key,
+                        Modifier.toString(loadedModifiers & METHOD_MODIFIERS), Modifier.toString(method.getAccessFlags() & METHOD_MODIFIERS)));
+            }
+        }
+        for (Map.Entry<String, Integer> entry : loadedMethods.entrySet()) {
+            String key = entry.getKey();
+            if (!canAddOrDelete(entry.getValue())) {
+                errors.add(String.format("method '%s' removed", key));
+            } else if (key.startsWith(LAMBDA_PREFIX)) {
+                warnings.add(String.format("lambda method '%s' removed", key));
+            }
+        }
+    }
+
+    /**
+     * @return 是否允许增删该方法, 仅private static或者private final方法
+     */
+    private static boolean canAddOrDelete(int modifiers) {
+        return ALLOW_ADD_DELETE_METHODS && Modifier.isPrivate(modifiers) && (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers));
+    }
+
+    /**
+     * @return 方法描述符, 比如(Ljava/lang/String;I)V
+     */
+    private static String descriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            descriptor(sb, parameterType);
+        }
+        sb.append(')');
+        descriptor(sb, returnType);
+        return sb.toString();
+    }
+
+    /**
+     * @return 字段描述符, 比如Ljava/lang/String;
+     */
+    private static String descriptor(Class<?> type) {
+        StringBuilder sb = new StringBuilder();
+        descriptor(sb, type);
+        return sb.toString();
+    }
+
+    private static void descriptor(StringBuilder sb, Class<?> type) {
+        while (type.isArray()) {
+            sb.append('[');
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive()) {
+            if (type == int.class) {
+                sb.append('I');
+            } else if (type == void.class) {
+                sb.append('V');
+            } else if (type == boolean.class) {
+                sb.append('Z');
+            } else if (type == byte.class) {
+                sb.append('B');
+            } else if (type == char.class) {
+                sb.append('C');
+            } else if (type == short.class) {
+                sb.append('S');
+            } else if (type == double.class) {
+                sb.append('D');
+            } else if (type == float.class) {
+                sb.append('F');
+            } else {
+                sb.append('J');
+            }
+        } else {
+            sb.append('L').append(type.getName().replace('.', '/')).append(';');
+        }
+    }
+}
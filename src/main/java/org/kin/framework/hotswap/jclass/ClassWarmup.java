@@ -0,0 +1,179 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.kin.framework.concurrent.ExecutionContext;
+import org.kin.framework.hotswap.HotswapPhase;
+import org.kin.framework.hotswap.HotswapStatistics;
+import org.kin.framework.utils.SysUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 类热更新后的预热阶段
+ * <p>
+ * 根据redefine以及新加载的类名匹配已注册的{@link WarmupTask}, 在后台线程并行执行
+ * 每个预热任务最多调用{@link #ITERATIONS}次, 所有预热任务最多执行{@link #TIMEOUT_MS}
+ * 统计最开始以及最后{@link #SAMPLE_SIZE}次调用的平均耗时, 以对比预热效果
+ *
+ * @author huangjianqin
+ * @date 2022/3/13
+ */
+final class ClassWarmup {
+    private static final Logger log = LoggerFactory.getLogger(ClassWarmup.class);
+    /** 每个预热任务最多调用次数 */
+    private static final int ITERATIONS = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.warmup.iterations", "10000"));
+    /** 预热阶段最长耗时(ms) */
+    private static final long TIMEOUT_MS = Long.parseLong(SysUtils.getSysProperty("kin.hotswap.warmup.timeout", "10000"));
+    /** 预热线程数 */
+    private static final int PARALLELISM = Integer.parseInt(SysUtils.getSysProperty("kin.hotswap.warmup.parallelism", String.valueOf(Math.max(SysUtils.CPU_NUM / 2, 1))));
+    /** 统计预热前后调用耗时的样本数 */
+    private static final int SAMPLE_SIZE = 100;
+    /** 包名匹配后缀 */
+    private static final String PACKAGE_SUFFIX = ".*";
+
+    /** key -> 类名或者以.*结尾的包名 */
+    private final Map<String, List<WarmupTask>> target2Tasks = new ConcurrentHashMap<>();
+    /** 预热线程, 首次注册预热任务时才创建, 空闲时线程会被回收 */
+    private volatile ExecutionContext executionContext;
+
+    /**
+     * 注册预热任务
+     *
+     * @param target 类名, 同时匹配其内部类; 或者以.*结尾的包名, 匹配该包以及子包下所有类
+     */
+    void register(String target, WarmupTask task) {
+        if (Objects.isNull(executionContext)) {
+            synchronized (this) {
+                if (Objects.isNull(executionContext)) {
+                    executionContext = ExecutionContext.elastic(0, PARALLELISM, "hotswapWarmup");
+                }
+            }
+        }
+        target2Tasks.computeIfAbsent(target, k -> new CopyOnWriteArrayList<>()).add(task);
+    }
+
+    /**
+     * 取消注册预热任务
+     */
+    void unregister(String target, WarmupTask task) {
+        List<WarmupTask> tasks = target2Tasks.get(target);
+        if (Objects.nonNull(tasks)) {
+            tasks.remove(task);
+        }
+    }
+
+    /**
+     * @return 是否没有注册任何预热任务
+     */
+    boolean isEmpty() {
+        for (List<WarmupTask> tasks : target2Tasks.values()) {
+            if (!tasks.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 执行匹配{@code classNames}的预热任务, 阻塞直到所有预热任务结束或者超时
+     *
+     * @param classNames redefine以及新加载的类名
+     * @return 预热结果
+     */
+    List<WarmupReport> warmup(Collection<String> classNames) {
+        //同一预热任务仅执行一次, value -> target
+        Map<WarmupTask, String> task2Target = new LinkedHashMap<>();
+        for (Map.Entry<String, List<WarmupTask>> entry : target2Tasks.entrySet()) {
+            String target = entry.getKey();
+            for (String className : classNames) {
+                if (match(target, className)) {
+                    for (WarmupTask task : entry.getValue()) {
+                        task2Target.putIfAbsent(task, target);
+                    }
+                    break;
+                }
+            }
+        }
+        if (task2Target.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        List<CompletableFuture<WarmupReport>> futures = new ArrayList<>(task2Target.size());
+        for (Map.Entry<WarmupTask, String> entry : task2Target.entrySet()) {
+            futures.add(CompletableFuture.supplyAsync(() -> warmup(entry.getValue(), entry.getKey(), deadline), executionContext));
+        }
+
+        List<WarmupReport> reports = new ArrayList<>(futures.size());
+        for (CompletableFuture<WarmupReport> future : futures) {
+            try {
+                //预热任务自身会检查deadline, 此处仅防止单次调用阻塞
+                long waitNanos = Math.max(deadline - System.nanoTime(), 0) + TimeUnit.SECONDS.toNanos(1);
+                reports.add(future.get(waitNanos, TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                log.warn("wait hotswap warmup task finish error", e);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * 反复调用预热任务, 直到达到调用次数或者超时
+     */
+    private WarmupReport warmup(String target, WarmupTask task, long deadline) {
+        long startTime = System.nanoTime();
+        //最开始SAMPLE_SIZE次调用耗时之和
+        long coldSum = 0;
+        //最后SAMPLE_SIZE次调用耗时, 环形数组
+        long[] warmSamples = new long[SAMPLE_SIZE];
+        int invocations = 0;
+        Throwable cause = null;
+        try {
+            while (invocations < ITERATIONS && System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                long invokeStartTime = System.nanoTime();
+                task.warmup();
+                long cost = System.nanoTime() - invokeStartTime;
+                if (invocations < SAMPLE_SIZE) {
+                    coldSum += cost;
+                }
+                warmSamples[invocations % SAMPLE_SIZE] = cost;
+                invocations++;
+            }
+        } catch (Throwable e) {
+            log.error(String.format("hotswap warmup task '%s' for '%s' encounter error", task.getClass().getName(), target), e);
+            HotswapStatistics.instance().recordFailure(HotswapPhase.WARMUP, target, e);
+            cause = e;
+        }
+
+        long costNanos = System.nanoTime() - startTime;
+        if (Objects.isNull(cause)) {
+            HotswapStatistics.instance().record(HotswapPhase.WARMUP, target, costNanos);
+        }
+        int sampleCount = Math.min(invocations, SAMPLE_SIZE);
+        long warmSum = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            warmSum += warmSamples[i];
+        }
+        WarmupReport report = new WarmupReport(target, invocations,
+                sampleCount > 0 ? coldSum / sampleCount : 0,
+                sampleCount > 0 ? warmSum / sampleCount : 0,
+                TimeUnit.NANOSECONDS.toMillis(costNanos), cause);
+        log.info("hotswap warmup '{}' finished, {}", target, report);
+        return report;
+    }
+
+    /**
+     * @return {@code className}是否匹配{@code target}
+     */
+    private static boolean match(String target, String className) {
+        if (target.endsWith(PACKAGE_SUFFIX)) {
+            return className.startsWith(target.substring(0, target.length() - 1));
+        }
+        return className.equals(target) || className.startsWith(target + "$");
+    }
+}
@@ -0,0 +1,183 @@
+package org.kin.framework.hotswap.jclass;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次类热更新的结果
+ *
+ * @author huangjianqin
+ * @date 2022/3/8
+ */
+public final class HotswapResult implements Serializable {
+    private static final long serialVersionUID = 4344593301007893738L;
+
+    /** 是否成功 */
+    private boolean success;
+    /** redefine的已加载类 */
+    private final List<String> redefinedClassNames = new ArrayList<>();
+    /** 加载的新类 */
+    private final List<String> newClassNames = new ArrayList<>();
+    /** 准备阶段耗时(ms), 即读取, 解析以及校验class文件耗时 */
+    private long prepareCostMs;
+    /** 获取{@link java.lang.instrument.Instrumentation}耗时(ms), 仅首次热更新需attach */
+    private long attachCostMs;
+    /** 加载新类耗时(ms) */
+    private long defineCostMs;
+    /** redefine耗时(ms) */
+    private long redefineCostMs;
+    /** 存在不兼容项或者警告项的结构兼容性预检结果 */
+    private List<PreflightReport> preflightReports = Collections.emptyList();
+    /** redefine批次数, 没有开启分批redefine则为1, 没有redefine则为0 */
+    private int redefineChunks;
+    /** 单批redefine最大耗时(ms), 即业务线程最长暂停时间 */
+    private long maxRedefinePauseMs;
+    /** 预热耗时(ms) */
+    private long warmupCostMs;
+    /** 预热结果 */
+    private List<WarmupReport> warmupReports = Collections.emptyList();
+    /** 总耗时(ms) */
+    private long totalCostMs;
+    /** 失败原因 */
+    private Throwable cause;
+
+    HotswapResult() {
+    }
+
+    //setter
+    void success() {
+        this.success = true;
+    }
+
+    void fail(Throwable cause) {
+        this.success = false;
+        this.cause = cause;
+    }
+
+    void addRedefinedClassName(String className) {
+        redefinedClassNames.add(className);
+    }
+
+    void addNewClassName(String className) {
+        newClassNames.add(className);
+    }
+
+    void setPrepareCostMs(long prepareCostMs) {
+        this.prepareCostMs = prepareCostMs;
+    }
+
+    void setAttachCostMs(long attachCostMs) {
+        this.attachCostMs = attachCostMs;
+    }
+
+    void setDefineCostMs(long defineCostMs) {
+        this.defineCostMs = defineCostMs;
+    }
+
+    void setRedefineCostMs(long redefineCostMs) {
+        this.redefineCostMs = redefineCostMs;
+    }
+
+    void setRedefineChunks(int redefineChunks) {
+        this.redefineChunks = redefineChunks;
+    }
+
+    void setMaxRedefinePauseMs(long maxRedefinePauseMs) {
+        this.maxRedefinePauseMs = maxRedefinePauseMs;
+    }
+
+    void setPreflightReports(List<PreflightReport> preflightReports) {
+        this.preflightReports = preflightReports;
+    }
+
+    void setWarmupCostMs(long warmupCostMs) {
+        this.warmupCostMs = warmupCostMs;
+    }
+
+    void setWarmupReports(List<WarmupReport> warmupReports) {
+        this.warmupReports = warmupReports;
+    }
+
+    void setTotalCostMs(long totalCostMs) {
+        this.totalCostMs = totalCostMs;
+    }
+
+    //getter
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public List<String> getRedefinedClassNames() {
+        return Collections.unmodifiableList(redefinedClassNames);
+    }
+
+    public List<String> getNewClassNames() {
+        return Collections.unmodifiableList(newClassNames);
+    }
+
+    public long getPrepareCostMs() {
+        return prepareCostMs;
+    }
+
+    public long getAttachCostMs() {
+        return attachCostMs;
+    }
+
+    public long getDefineCostMs() {
+        return defineCostMs;
+    }
+
+    public long getRedefineCostMs() {
+        return redefineCostMs;
+    }
+
+    public int getRedefineChunks() {
+        return redefineChunks;
+    }
+
+    public long getMaxRedefinePauseMs() {
+        return maxRedefinePauseMs;
+    }
+
+    public List<PreflightReport> getPreflightReports() {
+        return Collections.unmodifiableList(preflightReports);
+    }
+
+    public long getWarmupCostMs() {
+        return warmupCostMs;
+    }
+
+    public List<WarmupReport> getWarmupReports() {
+        return Collections.unmodifiableList(warmupReports);
+    }
+
+    public long getTotalCostMs() {
+        return totalCostMs;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "HotswapResult{" +
+                "success=" + success +
+                ", redefinedClassNames=" + redefinedClassNames +
+                ", newClassNames=" + newClassNames +
+                ", prepareCostMs=" + prepareCostMs +
+                ", attachCostMs=" + attachCostMs +
+                ", defineCostMs=" + defineCostMs +
+                ", redefineCostMs=" + redefineCostMs +
+                ", redefineChunks=" + redefineChunks +
+                ", maxRedefinePauseMs=" + maxRedefinePauseMs +
+                ", preflightReports=" + preflightReports +
+                ", warmupCostMs=" + warmupCostMs +
+                ", warmupReports=" + warmupReports +
+                ", totalCostMs=" + totalCostMs +
+                ", cause=" + cause +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+package org.kin.framework.hotswap.jclass;
+
+import com.sun.tools.attach.VirtualMachine;
+import org.kin.agent.JavaDynamicAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+/**
+ * {@link Instrumentation}提供者
+ * <p>
+ * 如果应用以-javaagent方式启动, 则直接复用premain获取到的{@link Instrumentation}
+ * 否则, 首次获取时attach当前进程并加载agent jar, 后续热更新直接复用, 不再重复attach
+ *
+ * @author huangjianqin
+ * @date 2022/3/5
+ */
+final class InstrumentationProvider {
+    private static final Logger log = LoggerFactory.getLogger(InstrumentationProvider.class);
+    /** 当前进程pid */
+    private static final String PID;
+    /** 缓存的{@link Instrumentation}实例 */
+    private static volatile Instrumentation instrumentation;
+
+    static {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        PID = name.split("@")[0];
+        log.debug("now pid is '{}'", PID);
+    }
+
+    private InstrumentationProvider() {
+    }
+
+    /**
+     * @return 是否已获取到{@link Instrumentation}实例
+     */
+    static boolean isAvailable() {
+        return Objects.nonNull(instrumentation) || Objects.nonNull(JavaDynamicAgent.getInstrumentation());
+    }
+
+    /**
+     * 获取{@link Instrumentation}实例, 仅首次调用可能会attach
+     */
+    static Instrumentation get() throws Exception {
+        Instrumentation inst = instrumentation;
+        if (Objects.nonNull(inst)) {
+            return inst;
+        }
+
+        synchronized (InstrumentationProvider.class) {
+            inst = instrumentation;
+            if (Objects.nonNull(inst)) {
+                return inst;
+            }
+
+            //-javaagent启动, premain已获取到Instrumentation
+            inst = JavaDynamicAgent.getInstrumentation();
+            if (Objects.isNull(inst)) {
+                attach();
+                inst = JavaDynamicAgent.getInstrumentation();
+            } else {
+                log.info("use instrumentation from java agent premain");
+            }
+
+            if (Objects.isNull(inst)) {
+                throw new ClassHotswapException(String.format("can not get instrumentation after load agent '%s'", ClassHotswap.AGENT_PATH));
+            }
+            instrumentation = inst;
+            return inst;
+        }
+    }
+
+    /**
+     * attach当前进程并加载agent jar
+     */
+    private static void attach() throws Exception {
+        long startTime = System.currentTimeMillis();
+        VirtualMachine vm = VirtualMachine.attach(PID);
+        try {
+            //JavaDynamicAgent所在的jar包
+            //app jar包与agent jar包同一路径
+            vm.loadAgent(ClassHotswap.AGENT_PATH);
+        } finally {
+            try {
+                vm.detach();
+            } catch (IOException e) {
+                log.error("detach vm error", e);
+            }
+        }
+        long endTime = System.currentTimeMillis();
+        log.info("attach vm '{}' and load agent '{}' finished, cost {} ms", PID, ClassHotswap.AGENT_PATH, endTime - startTime);
+    }
+}
@@ -0,0 +1,223 @@
+package org.kin.framework.hotswap.jclass;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已加载类索引, 类名 -> (class loader -> 类)
+ * <p>
+ * 初始化时基于{@link Instrumentation#getAllLoadedClasses()}构建, 后续通过{@link ClassFileTransformer}增量更新
+ * {@link ClassFileTransformer}回调时类还没定义, 仅记录类名以及class loader, 查找时才通过{@link Instrumentation#getInitiatedClasses(ClassLoader)}
+ * 获取该class loader已定义的类, 不会触发类加载以及类初始化
+ * <p>
+ * 仅弱引用class loader以及类, 不影响类卸载
+ *
+ * @author huangjianqin
+ * @date 2022/3/13
+ */
+final class LoadedClassIndex implements ClassFileTransformer {
+    private static final Logger log = LoggerFactory.getLogger(LoadedClassIndex.class);
+    /** transformer回调后超过该时间(ms)仍找不到已定义的类, 则认为类定义失败 */
+    private static final long DEFINE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Instrumentation instrumentation;
+    /** key -> 类名 */
+    private final Map<String, List<Entry>> name2Entries = new ConcurrentHashMap<>();
+
+    LoadedClassIndex(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        long startTime = System.currentTimeMillis();
+        //先注册transformer, 再遍历已加载类, 以免遗漏期间加载的类
+        instrumentation.addTransformer(this, false);
+        Class<?>[] loadedClasses = instrumentation.getAllLoadedClasses();
+        for (Class<?> loadedClass : loadedClasses) {
+            if (loadedClass.isArray() || loadedClass.isPrimitive()) {
+                continue;
+            }
+            String className = loadedClass.getName();
+            if (className.indexOf('/') >= 0) {
+                //过滤lambda等hidden class, 不支持redefine
+                continue;
+            }
+            add(className, loadedClass.getClassLoader(), loadedClass);
+        }
+        long endTime = System.currentTimeMillis();
+        log.info("build loaded class index finished, {} classes, cost {} ms", name2Entries.size(), endTime - startTime);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (Objects.isNull(classBeingRedefined) && Objects.nonNull(className)) {
+            //新加载的类, 此时类还没定义
+            add(className.replace('/', '.'), loader, null);
+        }
+        //不修改字节码
+        return null;
+    }
+
+    /**
+     * 记录已加载类
+     */
+    private void add(String className, ClassLoader classLoader, Class<?> loadedClass) {
+        List<Entry> entries = name2Entries.computeIfAbsent(className, k -> new CopyOnWriteArrayList<>());
+        for (Entry entry : entries) {
+            if (entry.isLoadedBy(classLoader)) {
+                if (Objects.nonNull(loadedClass)) {
+                    entry.classRef = new WeakReference<>(loadedClass);
+                }
+                return;
+            }
+        }
+        entries.add(new Entry(classLoader, loadedClass));
+    }
+
+    /**
+     * 查找已加载类
+     *
+     * @param className         类名
+     * @param targetClassLoader 指定class loader, 为null则返回所有class loader加载的同名类
+     * @return 已加载的类, 没有则返回空list
+     */
+    List<Class<?>> find(String className, ClassLoader targetClassLoader) {
+        List<Entry> entries = name2Entries.get(className);
+        if (Objects.isNull(entries)) {
+            return Collections.emptyList();
+        }
+
+        List<Class<?>> loadedClasses = new ArrayList<>(1);
+        for (Entry entry : entries) {
+            if (entry.isUnloaded()) {
+                entries.remove(entry);
+                continue;
+            }
+            if (Objects.nonNull(targetClassLoader) && !entry.isLoadedBy(targetClassLoader)) {
+                continue;
+            }
+            Class<?> loadedClass = entry.loadedClass();
+            if (Objects.isNull(loadedClass) && entry.isPending()) {
+                refresh(entry.classLoader());
+                loadedClass = entry.loadedClass();
+            }
+            if (Objects.isNull(loadedClass)) {
+                if (!entry.isPending() || entry.isDefineTimeout()) {
+                    //类已卸载或者定义失败
+                    entries.remove(entry);
+                }
+                //否则可能还在定义中
+                continue;
+            }
+            loadedClasses.add(loadedClass);
+        }
+        return loadedClasses;
+    }
+
+    /**
+     * 基于{@link Instrumentation#getInitiatedClasses(ClassLoader)}, 补全{@code classLoader}所有还没获取到类的记录
+     * 仅接受{@code classLoader}定义的类, 委派给其他class loader加载的类忽略
+     */
+    private void refresh(ClassLoader classLoader) {
+        for (Class<?> initiatedClass : instrumentation.getInitiatedClasses(classLoader)) {
+            if (initiatedClass.getClassLoader() != classLoader) {
+                continue;
+            }
+            List<Entry> entries = name2Entries.get(initiatedClass.getName());
+            if (Objects.isNull(entries)) {
+                continue;
+            }
+            for (Entry entry : entries) {
+                if (entry.isPending() && entry.isLoadedBy(classLoader)) {
+                    entry.classRef = new WeakReference<>(initiatedClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据class loader类名查找class loader, 用于热更新包指定目标class loader
+     * 同一class loader类可能有多个实例, 比如每个web应用一个class loader, 由调用方决定如何处理
+     *
+     * @param classLoaderClassName class loader类名
+     * @return 所有匹配的class loader, 没有则返回空set
+     */
+    Set<ClassLoader> findClassLoaders(String classLoaderClassName) {
+        Set<ClassLoader> classLoaders = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Entry> entries : name2Entries.values()) {
+            for (Entry entry : entries) {
+                ClassLoader classLoader = entry.classLoader();
+                if (Objects.nonNull(classLoader) && classLoader.getClass().getName().equals(classLoaderClassName)) {
+                    classLoaders.add(classLoader);
+                }
+            }
+        }
+        return classLoaders;
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * 某个class loader加载的类
+     */
+    private static final class Entry {
+        /** class loader, 为null则是bootstrap class loader */
+        private final WeakReference<ClassLoader> classLoaderRef;
+        /** 记录时间 */
+        private final long recordTime = System.currentTimeMillis();
+        /** 类, 为null则还没获取到已定义的类 */
+        private volatile WeakReference<Class<?>> classRef;
+
+        Entry(ClassLoader classLoader, Class<?> loadedClass) {
+            this.classLoaderRef = Objects.nonNull(classLoader) ? new WeakReference<>(classLoader) : null;
+            this.classRef = Objects.nonNull(loadedClass) ? new WeakReference<>(loadedClass) : null;
+        }
+
+        /**
+         * @return class loader, bootstrap class loader则返回null
+         */
+        ClassLoader classLoader() {
+            return Objects.nonNull(classLoaderRef) ? classLoaderRef.get() : null;
+        }
+
+        /**
+         * @return class loader是否已被回收
+         */
+        boolean isUnloaded() {
+            return Objects.nonNull(classLoaderRef) && Objects.isNull(classLoaderRef.get());
+        }
+
+        boolean isLoadedBy(ClassLoader classLoader) {
+            return Objects.isNull(classLoaderRef) ? Objects.isNull(classLoader) : classLoaderRef.get() == classLoader;
+        }
+
+        /**
+         * @return 是否还没获取到已定义的类
+         */
+        boolean isPending() {
+            return Objects.isNull(classRef);
+        }
+
+        /**
+         * @return 是否超过{@link #DEFINE_TIMEOUT_MS}仍没获取到已定义的类
+         */
+        boolean isDefineTimeout() {
+            return isPending() && System.currentTimeMillis() - recordTime > DEFINE_TIMEOUT_MS;
+        }
+
+        /**
+         * @return 类, 还没获取到或者已卸载则返回null
+         */
+        Class<?> loadedClass() {
+            WeakReference<Class<?>> classRef = this.classRef;
+            return Objects.nonNull(classRef) ? classRef.get() : null;
+        }
+    }
+}
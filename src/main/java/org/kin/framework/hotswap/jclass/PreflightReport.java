@@ -0,0 +1,73 @@
+package org.kin.framework.hotswap.jclass;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单个已加载类的redefine结构兼容性预检结果
+ *
+ * @author huangjianqin
+ * @date 2022/3/14
+ */
+public final class PreflightReport implements Serializable {
+    private static final long serialVersionUID = 4223082399629972232L;
+
+    /** class文件路径 */
+    private final String filePath;
+    /** 类名 */
+    private final String className;
+    /** 已加载类的class loader */
+    private final String classLoader;
+    /** 不兼容项, 不为空则redefine必定失败 */
+    private final List<String> errors;
+    /** 警告项, 可以redefine, 但运行时行为可能与预期不一致 */
+    private final List<String> warnings;
+
+    PreflightReport(String filePath, String className, String classLoader, List<String> errors, List<String> warnings) {
+        this.filePath = filePath;
+        this.className = className;
+        this.classLoader = classLoader;
+        this.errors = errors;
+        this.warnings = warnings;
+    }
+
+    /**
+     * @return 是否可以redefine
+     */
+    public boolean isCompatible() {
+        return errors.isEmpty();
+    }
+
+    //getter
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getClassLoader() {
+        return classLoader;
+    }
+
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    @Override
+    public String toString() {
+        return "PreflightReport{" +
+                "filePath='" + filePath + '\'' +
+                ", className='" + className + '\'' +
+                ", classLoader='" + classLoader + '\'' +
+                ", errors=" + errors +
+                ", warnings=" + warnings +
+                '}';
+    }
+}
@@ -0,0 +1,72 @@
+package org.kin.framework.hotswap.jclass;
+
+import java.io.Serializable;
+
+/**
+ * 单个{@link WarmupTask}的预热结果
+ *
+ * @author huangjianqin
+ * @date 2022/3/13
+ */
+public final class WarmupReport implements Serializable {
+    private static final long serialVersionUID = 4997099690814843564L;
+
+    /** 注册预热任务的类名或者包名 */
+    private final String target;
+    /** 调用次数 */
+    private final long invocations;
+    /** 预热开始时, 即redefine后前几次调用的平均耗时(ns) */
+    private final long coldAvgNanos;
+    /** 预热结束时, 最后几次调用的平均耗时(ns) */
+    private final long warmAvgNanos;
+    /** 预热耗时(ms) */
+    private final long costMs;
+    /** 预热任务异常 */
+    private final Throwable cause;
+
+    WarmupReport(String target, long invocations, long coldAvgNanos, long warmAvgNanos, long costMs, Throwable cause) {
+        this.target = target;
+        this.invocations = invocations;
+        this.coldAvgNanos = coldAvgNanos;
+        this.warmAvgNanos = warmAvgNanos;
+        this.costMs = costMs;
+        this.cause = cause;
+    }
+
+    //getter
+    public String getTarget() {
+        return target;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getColdAvgNanos() {
+        return coldAvgNanos;
+    }
+
+    public long getWarmAvgNanos() {
+        return warmAvgNanos;
+    }
+
+    public long getCostMs() {
+        return costMs;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmupReport{" +
+                "target='" + target + '\'' +
+                ", invocations=" + invocations +
+                ", coldAvgNanos=" + coldAvgNanos +
+                ", warmAvgNanos=" + warmAvgNanos +
+                ", costMs=" + costMs +
+                ", cause=" + cause +
+                '}';
+    }
+}
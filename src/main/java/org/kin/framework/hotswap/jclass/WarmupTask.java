@@ -0,0 +1,19 @@
+package org.kin.framework.hotswap.jclass;
+
+/**
+ * 类热更新后的预热任务
+ * <p>
+ * redefine后, 被redefine类已JIT编译的代码会被丢弃, 热点方法重新在解释器执行, 直到再次编译, 期间延迟会明显上升
+ * 开发者可以注册预热任务, 在redefine后立即在后台线程反复调用热点方法, 以触发JIT重新编译
+ * 预热任务会被反复调用, 需保证幂等且无副作用
+ *
+ * @author huangjianqin
+ * @date 2022/3/13
+ */
+@FunctionalInterface
+public interface WarmupTask {
+    /**
+     * 调用一次热点方法
+     */
+    void warmup() throws Exception;
+}
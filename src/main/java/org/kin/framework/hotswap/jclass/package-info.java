@@ -15,6 +15,11 @@ package org.kin.framework.hotswap.jclass;
      1. 通过pid获得虚拟机对象
      2. 通过连接虚拟机加载代理jar包,这样就调用到agentmain,获取得到Instrumentation
      3. 基于Instrumentation接口可以实现JDK的代理机制,从而实现对类进行动态重新定义。
+     ps: 仅首次热更新时attach, 后续复用Instrumentation; 若应用以-javaagent方式启动, 则直接使用premain获取到的Instrumentation, 无需attach
+     ps: 已加载的类通过Instrumentation.getAllLoadedClasses构建索引并由ClassFileTransformer增量更新, 不再使用Class.forName判断是否新类,
+         默认redefine所有class loader加载的同名类; zip包内META-INF/hotswap.properties的classLoader可以指定目标class loader类名
+     ps: redefine前会并行对比新class文件与已加载类的修饰符, 继承结构, 字段以及方法签名, 任何不兼容都会汇总报告并直接失败, 不会调用redefineClasses;
+         也可以通过JMX的preflight操作仅预检不热更新
 
      注意：com.sun.tools.attach.VirtualMachine的jar包是 jdk下lib中的tools.jar,所以项目中要引用到这个jar包,而且因为涉及到底层虚拟机,windows和linux机器这个jar不同
 
@@ -0,0 +1,103 @@
+package org.kin.framework.hotswap;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 虚拟线程支持, JDK21+版本
+ * 打包进multi-release jar的META-INF/versions/21, 以替代src/main/java下的同名类
+ *
+ * @author huangjianqin
+ * @date 2022/3/15
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return 是否支持虚拟线程
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的线程池, 并发数有限
+     *
+     * @param name         线程名前缀
+     * @param concurrency  最大并发数
+     * @param rejectPolicy 超过最大并发数时的处理策略
+     */
+    static ExecutorService newBoundedExecutor(String name, int concurrency, ReloadExecutors.RejectPolicy rejectPolicy) {
+        return new BoundedExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory()),
+                concurrency, rejectPolicy);
+    }
+
+    /**
+     * 通过{@link Semaphore}限制并发数的线程池
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final ReloadExecutors.RejectPolicy rejectPolicy;
+
+        BoundedExecutor(ExecutorService delegate, int concurrency, ReloadExecutors.RejectPolicy rejectPolicy) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(concurrency);
+            this.rejectPolicy = rejectPolicy;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                if (rejectPolicy == ReloadExecutors.RejectPolicy.CALLER_RUNS && !delegate.isShutdown()) {
+                    command.run();
+                    return;
+                }
+                throw new RejectedExecutionException("too many concurrent tasks");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}